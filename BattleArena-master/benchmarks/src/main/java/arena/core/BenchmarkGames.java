@@ -0,0 +1,48 @@
+package arena.core;
+
+import java.util.SplittableRandom;
+
+import arena.agents.RandomAI;
+
+/**
+ * Builds the games the benchmarks run on. A game is a regular generated map of the requested size, on which projectiles and mines are
+ * scattered so that roughly <code>density</code> of the floor cells hold one.
+ */
+final class BenchmarkGames
+{
+	private BenchmarkGames()
+	{
+	}
+	
+	static final Game generate(int size, double density, long seed)
+	{
+		Game game = new Game(size, size, RandomAI.class, RandomAI.class);
+		game.generateMap(seed);
+		
+		Map map = game.getMap();
+		SplittableRandom random = new SplittableRandom(seed);
+		for(int y = 0; y < size; y++)
+		{
+			for(int x = 0; x < size; x++)
+			{
+				if(!map.isEmpty(x, y) || random.nextDouble() >= density)
+					continue;
+				
+				if(random.nextBoolean())
+				{
+					int direction = random.nextInt(4);
+					int speedX = (direction == 0) ? 1 : (direction == 1) ? -1 : 0;
+					int speedY = (direction == 2) ? 1 : (direction == 3) ? -1 : 0;
+					Player owner = random.nextBoolean() ? game.getPlayer1() : game.getPlayer2();
+					map.addProjectile(x, y, speedX, speedY, owner);
+				}
+				else
+				{
+					map.addMine(x, y);
+				}
+			}
+		}
+		
+		return game;
+	}
+}
@@ -0,0 +1,95 @@
+package arena.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arena.core.GameState.EntityType;
+
+/**
+ * Measures what an agent's turn costs the engine: building its {@link GameState} and {@link GameUtility}, and the queries agents make the most.
+ * The map is not changed by any of these, so one map is generated per trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameStateBenchmark
+{
+	// More start cells than PathfindingGrid caches, so that every calculatePathCold call searches the map
+	private static final int START_CELLS = 64;
+	
+	@Param({ "20", "50", "100" })
+	public int size;
+	
+	@Param({ "0.05", "0.25" })
+	public double density;
+	
+	private Game game;
+	private GameState gameState;
+	private GameUtility gameUtility;
+	private Vector2[] starts;
+	private int nextStart;
+	
+	@Setup
+	public void generate()
+	{
+		game = BenchmarkGames.generate(size, density, 42);
+		gameState = new GameState(game, game.getPlayer1(), game.getPlayer2());
+		gameUtility = new GameUtility(gameState);
+		
+		starts = new Vector2[START_CELLS];
+		int found = 0;
+		for(int cell = 0; found < START_CELLS; cell = (cell + 7919) % (size * size))
+		{
+			int x = cell % size;
+			int y = cell / size;
+			if(gameUtility.isWalkable(x, y))
+				starts[found++] = new Vector2(x, y);
+		}
+	}
+	
+	@Benchmark
+	public GameState newGameState()
+	{
+		return new GameState(game, game.getPlayer1(), game.getPlayer2());
+	}
+	
+	@Benchmark
+	public GameUtility newGameUtility()
+	{
+		return new GameUtility(gameState);
+	}
+	
+	@Benchmark
+	public Vector2 findNearest()
+	{
+		return gameUtility.findNearest(gameState.getPlayerX(), gameState.getPlayerY(), EntityType.HealthPack);
+	}
+	
+	@Benchmark
+	public Vector2[] calculatePathCold()
+	{
+		Vector2 start = starts[nextStart];
+		nextStart = (nextStart + 1) % START_CELLS;
+		return gameUtility.calculatePath(start.getX(), start.getY(), gameState.getOpponentX(), gameState.getOpponentY());
+	}
+	
+	@Benchmark
+	public Vector2[] calculatePathCached()
+	{
+		return gameUtility.calculatePath(gameState.getPlayerX(), gameState.getPlayerY(), gameState.getOpponentX(), gameState.getOpponentY());
+	}
+}
@@ -0,0 +1,100 @@
+package arena.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-round work of {@link Map}. Every call changes the map (projectiles fly, mines go off, the storm grows), so each call
+ * needs a map of its own. Generating one before every call would cost far more than the call and drown it in timer overhead, so the
+ * maps of a whole batch are generated before each iteration, and an iteration is a single invocation that calls once on each map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(MapBenchmark.BATCH_SIZE)
+@Warmup(iterations = 20)
+@Measurement(iterations = 20)
+@Fork(1)
+public class MapBenchmark
+{
+	static final int BATCH_SIZE = 256;
+	
+	@Param({ "20", "50", "100" })
+	public int size;
+	
+	@Param({ "0.05", "0.25" })
+	public double density;
+	
+	private long seed;
+	private final Map[] maps = new Map[BATCH_SIZE];
+	private final List<List<Entity>> entities = new ArrayList<>(BATCH_SIZE);
+	
+	@Setup(Level.Iteration)
+	public void generate()
+	{
+		entities.clear();
+		for(int i = 0; i < BATCH_SIZE; i++)
+		{
+			maps[i] = BenchmarkGames.generate(size, density, seed++).getMap();
+			entities.add(new ArrayList<>(maps[i].getEntities()));
+		}
+	}
+	
+	/**
+	 * The maps of {@link MapBenchmark#advanceStorm(StormState)}, on which the storm already covers a number of rings, so that the call
+	 * measures the growth of a ring further in.
+	 */
+	@State(Scope.Thread)
+	public static class StormState
+	{
+		@Param({ "0", "4", "8" })
+		public int ring; // smaller than the number of rings of the smallest map
+		
+		// Runs after the maps of the iteration were generated, since it depends on them
+		@Setup(Level.Iteration)
+		public void advance(MapBenchmark benchmark)
+		{
+			for(Map map : benchmark.maps)
+			{
+				for(int i = 0; i < ring; i++)
+					map.advanceStorm();
+			}
+		}
+	}
+	
+	@Benchmark
+	public void tick()
+	{
+		for(int i = 0; i < BATCH_SIZE; i++)
+			maps[i].tick(entities.get(i));
+	}
+	
+	@Benchmark
+	public void checkCollisions()
+	{
+		for(Map map : maps)
+			map.checkCollisions();
+	}
+	
+	@Benchmark
+	public void advanceStorm(StormState storm)
+	{
+		for(Map map : maps)
+			map.advanceStorm();
+	}
+}
@@ -0,0 +1,65 @@
+package arena.core;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a full {@link HeadlessMatch}, from map generation to the last round. Each invocation plays the next seed, so the score
+ * averages over many different maps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MatchBenchmark
+{
+	@Param({ "20", "50", "100" })
+	public int size;
+	
+	@Param({ "arena.agents.GageAI", "arena.agents.SimpleAI" })
+	public String agent;
+	
+	private HeadlessMatch match;
+	private long seed;
+	private PrintStream out;
+	
+	@Setup
+	public void setup() throws ClassNotFoundException
+	{
+		// Some agents print their own diagnostics to System.out, which would be measured along with the match
+		out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		
+		Class<? extends PlayerAI> agentClass = Class.forName(agent).asSubclass(PlayerAI.class);
+		match = new HeadlessMatch(size, size, agentClass, arena.agents.ExampleAI.class);
+		match.setTurnTimeout(0); // the agents decide on the benchmark thread, as slowly as the map size makes them
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		System.setOut(out);
+	}
+	
+	@Benchmark
+	public HeadlessMatch.Result play()
+	{
+		return match.play(seed++);
+	}
+}
@@ -20,7 +20,7 @@ public class FrankymonkeyAI extends PlayerAI
 
 				if(distance <= 2 && gameUtility.haveLineOfSight(playerX, playerY, opponentX, opponentY))
 				{
-					randomselector =(int)(Math.random() * 10);
+					randomselector = gameUtility.randomInt(10);
 					switch(randomselector)  {
 					
 					case 1:
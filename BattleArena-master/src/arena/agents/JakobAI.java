@@ -45,7 +45,7 @@ public class JakobAI extends PlayerAI
 		}
 		if(!isMapCenterEmpty && !isClose) {
 			
-			if(Math.random() < 0.5) {
+			if(gameUtility.randomDouble() < 0.5) {
 				return gameUtility.moveTowards(mapCenter - 1,mapCenter);
 			}else {
 				return gameUtility.moveTowards(mapCenter,mapCenter - 1);
@@ -1,7 +1,5 @@
 package arena.agents;
 
-import java.util.Random;
-
 import arena.core.Action;
 import arena.core.GameState;
 import arena.core.GameUtility;
@@ -9,15 +7,11 @@ import arena.core.PlayerAI;
 
 public class RandomAI extends PlayerAI
 {
-	// Generate a random generator
-	private final Random rand;
-	
 	// Store all possible actions in an array for future use
 	private final Action[] actions;
 	
 	public RandomAI()
 	{
-		rand = new Random();
 		actions = Action.values();
 	}
 	
@@ -25,6 +19,6 @@ public class RandomAI extends PlayerAI
 	protected Action getNextAction(GameState gameState, GameUtility gameUtility)
 	{
 		// Returns a random action from the actions array
-		return actions[rand.nextInt(actions.length)];
+		return actions[gameUtility.randomInt(actions.length)];
 	}
 }
\ No newline at end of file
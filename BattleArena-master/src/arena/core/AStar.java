@@ -1,131 +1,74 @@
 package arena.core;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 final class AStar
 {
-	final static Node[] calculatePath(Node[][] map, Node startNode, Node endNode)
+	// Up, left, right, down: the order the neighbors have always been expanded in
+	private static final int[] NEIGHBOR_DX = { 0, -1, 1, 0 };
+	private static final int[] NEIGHBOR_DY = { -1, 0, 0, 1 };
+	
+	/**
+	 * Calculates the shortest path between the specified cells and returns its length. The cells of the path are read
+	 * with {@link PathfindingGrid#getPathCell(int)}, from the first cell to visit up to the end cell.
+	 */
+	final static int calculatePath(PathfindingGrid grid, int startX, int startY, int endX, int endY)
 	{
-		List<Node> openList = new ArrayList<>();
-		List<Node> closedList = new ArrayList<>();
+		int width = grid.getWidth();
+		int startCell = startY * width + startX;
+		int endCell = endY * width + endX;
 		
-		openList.add(startNode);
-		startNode.setParent(null);
+		grid.beginSearch();
+		grid.visit(startCell, 0, manhattan(startX, startY, endX, endY), -1);
 		
-		while(!openList.isEmpty())
+		while(grid.hasOpenCells())
 		{
-			// Find lowest 'f' in open list
-			Node q = getLowestFInList(openList);
-			openList.remove(q);
-			closedList.add(q);
+			// Take lowest 'f' from the open heap
+			int q = grid.closeLowestF();
 			
 			// We reached the end point, lets trace back the path
-			if(q.equals(endNode))
+			if(q == endCell)
 			{
-				return tracePath(startNode, endNode);
+				return grid.tracePath(startCell, endCell);
 			}
 			
-			int x = q.getX();
-			int y = q.getY();
+			int x = q % width;
+			int y = q / width;
 			
-			// For each neighbor of the current position...
-			for(int dy = -1; dy <= 1; dy++)
+			// For each up/left/right/down neighbor of the current position...
+			for(int i = 0; i < NEIGHBOR_DX.length; i++)
 			{
-				for(int dx = -1; dx <= 1; dx++)
+				int successorX = x + NEIGHBOR_DX[i];
+				int successorY = y + NEIGHBOR_DY[i];
+				
+				// Skip out of bounds neighbors
+				if(successorX < 0 || successorY < 0 || successorX >= width || successorY >= grid.getHeight())
+					continue;
+				
+				int successor = successorY * width + successorX;
+				
+				// Skip if neighbor has been already evaluated
+				if(grid.isClosed(successor))
+					continue;
+				
+				// Skip if neighbor is not walkable
+				if(!grid.isWalkable(successor))
+					continue;
+				
+				// A* calculations
+				int newG = grid.getG(q) + 1;
+				int newH = manhattan(successorX, successorY, endX, endY);
+				int newF = newG + newH;
+				if(newF < grid.getF(successor) || !grid.isOpen(successor))
 				{
-					// Skip center (our current position)
-					if(dx == 0 && dy == 0)
-						continue;
-					
-					// Skip corner neighbors to prevent diagonal path finding, so that we are limited to up/left/right/down neighbors 
-					if(Math.abs(dx) + Math.abs(dy) > 1)
-						continue;
-					
-					// Skip out of bounds neighbors
-					if(isOutOfBounds(map, x+dx, y+dy))
-						continue;
-					
-					Node successor = map[x+dx][y+dy];
-					
-					// Skip if neighbor has been already evaluated
-					if(closedList.contains(successor))
-						continue;
-					
-					// Skip if neighbor is not walkable
-					if(!successor.isWalkable())
-						continue;
-					
-					// A* calculations
-					double newG = q.getG() + distance(successor, q);
-					double newH = manhattan(endNode, successor);
-					double newF = newG + newH;
-					if(newF < successor.getF() || !openList.contains(successor))
-					{
-						successor.setG(newG);
-						successor.setH(newH);
-						successor.setF(newF);
-						successor.setParent(q);
-						
-						if(!openList.contains(successor))
-						{
-							openList.add(successor);
-						}
-					}
+					grid.visit(successor, newG, newF, q);
 				}
 			}
 		}
 		
-		return tracePath(startNode, endNode);
-	}
-	
-	private static final Node[] tracePath(Node startNode, Node endNode)
-	{
-		List<Node> path = new ArrayList<>();
-		Node currentNode = endNode;
-		while(!currentNode.equals(startNode))
-		{
-			path.add(currentNode);
-			currentNode = currentNode.getParent();
-			
-			if(currentNode == null) // No path found.
-				return new Node[0];
-		}
-		Collections.reverse(path);
-		return path.toArray(new Node[path.size()]);
-	}
-	
-	private static final boolean isOutOfBounds(Node[][] map, int x, int y)
-	{
-		return (x < 0 || y < 0 || x >= map.length || y >= map[0].length);
-	}
-	
-	private static final Node getLowestFInList(List<Node> list)
-	{
-		Node lowestNode = null;
-		double lowestF = Double.MAX_VALUE;
-		for(Node node : list)
-		{
-			if(lowestNode == null || node.getF() < lowestF)
-			{
-				lowestNode = node;
-				lowestF = node.getF();
-			}
-		}
-		return lowestNode;
-	}
-	
-	private static final int manhattan(Node node1, Node node2)
-	{
-		int dx = node1.getX() - node2.getX();
-		int dy = node1.getY() - node2.getY(); 
-		return Math.abs(dx) + Math.abs(dy);
+		return grid.tracePath(startCell, endCell);
 	}
 	
-	private static final double distance(Node node1, Node node2)
+	private static final int manhattan(int x1, int y1, int x2, int y2)
 	{
-		int dx = node1.getX() - node2.getX();
-		int dy = node1.getY() - node2.getY();
-		return Math.sqrt(dx*dx + dy*dy);
+		return Math.abs(x1 - x2) + Math.abs(y1 - y2);
 	}
 }
@@ -0,0 +1,97 @@
+package arena.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.ProtectionDomain;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class loader that gives an agent its own copy of the classes of its package, so that static fields are not shared with any other
+ * instance of the same agent. Loading the same agent class through two loaders yields two distinct classes, each with its own statics,
+ * which is what lets a mirror match (GageAI vs GageAI) or the parallel workers of a tournament run without corrupting each other.
+ *
+ * <p>
+ * Classes of the agent's package (and its subpackages) are defined by this loader first; everything else, including the engine and the
+ * JDK, comes from the parent, so the isolated agent still is a {@link PlayerAI}. The bytecode of every class is read once per process and
+ * kept in memory, so isolating the agents of a match costs the class definitions but no I/O.
+ * </p>
+ */
+final class AgentClassLoader extends ClassLoader
+{
+	static
+	{
+		registerAsParallelCapable();
+	}
+	
+	private static final byte[] NOT_FOUND = new byte[0];
+	private static final ConcurrentHashMap<String, byte[]> CLASS_BYTES = new ConcurrentHashMap<>();
+	
+	private final String isolatedPrefix;
+	private final ProtectionDomain protectionDomain;
+	
+	private AgentClassLoader(Class<?> agentClass)
+	{
+		super("agent:" + agentClass.getSimpleName(), agentClass.getClassLoader());
+		String packageName = agentClass.getPackageName();
+		isolatedPrefix = packageName.isEmpty() ? "" : packageName + ".";
+		protectionDomain = agentClass.getProtectionDomain();
+	}
+	
+	/**
+	 * Returns a copy of the specified agent class, loaded with its package by a new loader.
+	 *
+	 * @throws ClassNotFoundException when the bytecode of the class cannot be found
+	 */
+	static final Class<? extends PlayerAI> isolate(Class<? extends PlayerAI> agentClass) throws ClassNotFoundException
+	{
+		AgentClassLoader loader = new AgentClassLoader(agentClass);
+		return loader.loadClass(agentClass.getName()).asSubclass(PlayerAI.class);
+	}
+	
+	private final boolean isIsolated(String name)
+	{
+		return name.startsWith(isolatedPrefix) && !name.startsWith("arena.core.") && !name.startsWith("java.") && !name.startsWith("javax.")
+			   && !name.startsWith("jdk.") && !name.startsWith("sun.") && !name.startsWith("com.sun.");
+	}
+	
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+	{
+		if(!isIsolated(name))
+			return super.loadClass(name, resolve);
+		
+		synchronized(getClassLoadingLock(name))
+		{
+			Class<?> loadedClass = findLoadedClass(name);
+			if(loadedClass == null)
+			{
+				byte[] bytes = getClassBytes(name);
+				if(bytes == NOT_FOUND)
+					return super.loadClass(name, resolve);
+				
+				loadedClass = defineClass(name, bytes, 0, bytes.length, protectionDomain);
+			}
+			
+			if(resolve)
+				resolveClass(loadedClass);
+			
+			return loadedClass;
+		}
+	}
+	
+	private final byte[] getClassBytes(String name)
+	{
+		return CLASS_BYTES.computeIfAbsent(name, key ->
+		{
+			try(InputStream in = getParent().getResourceAsStream(key.replace('.', '/') + ".class"))
+			{
+				return (in != null) ? in.readAllBytes() : NOT_FOUND;
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+}
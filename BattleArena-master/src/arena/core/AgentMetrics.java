@@ -0,0 +1,233 @@
+package arena.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The <code>AgentMetrics</code> class represents how an agent spent its turns: how long {@link PlayerAI#getNextAction(GameState, GameUtility)}
+ * took, how much memory it allocated, and which {@link GameUtility} methods it called. The metrics of every match played by the same agent
+ * class are added up by a {@link MetricsRegistry}.
+ *
+ * @author ERAU AI Club
+ */
+public final class AgentMetrics
+{
+	/**
+	 * The <code>UtilityMethod</code> enum represents the methods of {@link GameUtility} whose calls are counted.
+	 * Overloads of the same method are counted together.
+	 *
+	 * @author ERAU AI Club
+	 */
+	public enum UtilityMethod
+	{
+		/** {@link GameUtility#isWalkable(int, int)} */
+		IsWalkable,
+		/** {@link GameUtility#calculatePath(int, int, int, int)} */
+		CalculatePath,
+		/** {@link GameUtility#isReachable(int, int, int, int)} */
+		IsReachable,
+		/** {@link GameUtility#haveLineOfSight(int, int, int, int)} */
+		HaveLineOfSight,
+		/** {@link GameUtility#moveTowards(int, int)} */
+		MoveTowards,
+		/** {@link GameUtility#shootTowards(int, int)} */
+		ShootTowards,
+		/** {@link GameUtility#placeMineTowards(int, int)} */
+		PlaceMineTowards,
+		/** {@link GameUtility#manhattanDistance(int, int, int, int)} */
+		ManhattanDistance,
+		/** {@link GameUtility#euclidianDistance(int, int, int, int)} */
+		EuclidianDistance,
+		/** {@link GameUtility#findNearest(int, int, GameState.EntityType)} */
+		FindNearest,
+		/** {@link GameUtility#findFurthest(int, int, GameState.EntityType)} */
+		FindFurthest,
+		/** {@link GameUtility#isWithinStorm(int, int, int)} */
+		IsWithinStorm,
+		/** {@link GameUtility#chooseRandomly(Action...)} */
+		ChooseRandomly,
+		/** {@link GameUtility#randomInt(int)} */
+		RandomInt,
+		/** {@link GameUtility#randomDouble()} */
+		RandomDouble
+	}
+	
+	private static final com.sun.management.ThreadMXBean ALLOCATION_MX_BEAN = getAllocationMXBean();
+	
+	private final String agentName;
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LatencyHistogram allocations = new LatencyHistogram(); // bytes instead of nanoseconds
+	private final long[] utilityCalls = new long[UtilityMethod.values().length];
+	private long timeouts;
+	private long errors;
+	
+	AgentMetrics(String agentName)
+	{
+		this.agentName = agentName;
+	}
+	
+	private static final com.sun.management.ThreadMXBean getAllocationMXBean()
+	{
+		// Only HotSpot based VMs report allocations
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if(threadMXBean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+			if(bean.isThreadAllocatedMemorySupported())
+			{
+				bean.setThreadAllocatedMemoryEnabled(true);
+				return bean;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the number of bytes the current thread allocated since it started, or -1 if the VM cannot tell.
+	 */
+	static final long getAllocatedBytes()
+	{
+		return (ALLOCATION_MX_BEAN != null) ? ALLOCATION_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+	
+	final void recordTurn(long nanos, long allocatedBytes)
+	{
+		latencies.record(nanos);
+		if(allocatedBytes >= 0)
+			allocations.record(allocatedBytes);
+	}
+	
+	/**
+	 * Records a turn that was forfeited because the agent did not decide in time. The turn counts as lasting the whole timeout.
+	 */
+	final void recordTimeout(long timeoutNanos)
+	{
+		latencies.record(timeoutNanos);
+		timeouts++;
+	}
+	
+	/**
+	 * Records a turn that was forfeited because the agent threw an exception.
+	 */
+	final void recordError()
+	{
+		errors++;
+	}
+	
+	final void countUtilityCall(UtilityMethod method)
+	{
+		utilityCalls[method.ordinal()]++;
+	}
+	
+	final void add(AgentMetrics other)
+	{
+		latencies.add(other.latencies);
+		allocations.add(other.allocations);
+		for(int i = 0; i < utilityCalls.length; i++)
+			utilityCalls[i] += other.utilityCalls[i];
+		timeouts += other.timeouts;
+		errors += other.errors;
+	}
+	
+	final AgentMetrics copy()
+	{
+		AgentMetrics copy = new AgentMetrics(agentName);
+		copy.add(this);
+		return copy;
+	}
+	
+	/**
+	 * Returns the simple class name of the agent.
+	 *
+	 * @return the name of the agent
+	 */
+	public final String getAgentName()
+	{
+		return agentName;
+	}
+	
+	/**
+	 * Returns the number of turns the agent played.
+	 *
+	 * @return the number of turns
+	 */
+	public final long getTurns()
+	{
+		return latencies.getCount();
+	}
+	
+	/**
+	 * Returns the number of turns the agent forfeited because it did not decide within the turn timeout.
+	 *
+	 * @return the number of timeouts
+	 */
+	public final long getTimeouts()
+	{
+		return timeouts;
+	}
+	
+	/**
+	 * Returns the number of turns the agent forfeited because it threw an exception.
+	 *
+	 * @return the number of exceptions
+	 */
+	public final long getErrors()
+	{
+		return errors;
+	}
+	
+	/**
+	 * Returns the time in nanoseconds that the specified percentage of the turns took at most, within 12.5%.
+	 *
+	 * @param percentile - the percentage of turns, in [0, 100]
+	 *
+	 * @return the duration of a turn at the percentile, in nanoseconds
+	 */
+	public final long getLatencyPercentile(double percentile)
+	{
+		return latencies.getPercentile(percentile);
+	}
+	
+	/**
+	 * Returns the time in nanoseconds of the longest turn.
+	 *
+	 * @return the duration of the longest turn, in nanoseconds
+	 */
+	public final long getMaxLatency()
+	{
+		return latencies.getMax();
+	}
+	
+	/**
+	 * Returns the average number of bytes allocated during a turn, or 0 if the VM does not report allocations.
+	 *
+	 * @return the average allocation of a turn, in bytes
+	 */
+	public final double getMeanAllocatedBytes()
+	{
+		return allocations.getMean();
+	}
+	
+	/**
+	 * Returns the number of bytes allocated during the most allocating turn, or 0 if the VM does not report allocations.
+	 *
+	 * @return the maximum allocation of a turn, in bytes
+	 */
+	public final long getMaxAllocatedBytes()
+	{
+		return allocations.getMax();
+	}
+	
+	/**
+	 * Returns how many times the agent called the specified method.
+	 *
+	 * @param method - the method of {@link GameUtility}
+	 *
+	 * @return the number of calls
+	 */
+	public final long getUtilityCalls(UtilityMethod method)
+	{
+		return utilityCalls[method.ordinal()];
+	}
+}
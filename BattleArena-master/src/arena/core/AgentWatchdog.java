@@ -0,0 +1,169 @@
+package arena.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the decisions of one agent on a thread of its own, under a deadline. When the agent takes longer, its turn is forfeited: the
+ * caller gets {@link Action#NoAction} and the game goes on, whatever the agent is doing.
+ *
+ * <p>
+ * An agent that overran is interrupted. When it still has not returned after a short grace period, typically because it is stuck in a
+ * loop that never checks for interruption, the watchdog gives up on it: the agent is still busy with the abandoned turn, so it is never
+ * asked to decide again, and the thread is left to finish on its own. The game replaces an abandoned watchdog when the next match
+ * creates new agents.
+ * </p>
+ *
+ * <p>
+ * A thread that never returns is never given back, so the threads still running abandoned decisions are counted across every game.
+ * Once {@link #MAX_ABANDONED_THREADS} of them are alive, creating a watchdog fails instead of letting them pile up.
+ * </p>
+ */
+final class AgentWatchdog
+{
+	private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 1;
+	private static final long INTERRUPT_GRACE_MILLIS = 50;
+	
+	/** The number of threads still running abandoned decisions beyond which no more watchdogs are created. */
+	static final int MAX_ABANDONED_THREADS = 64;
+	
+	private static final AtomicInteger abandonedThreads = new AtomicInteger();
+	
+	private final String threadName;
+	private ThreadPoolExecutor executor;
+	private boolean abandoned;
+	
+	/**
+	 * @throws IllegalStateException when {@link #MAX_ABANDONED_THREADS} threads are still running abandoned decisions
+	 */
+	AgentWatchdog(String threadName)
+	{
+		int threads = abandonedThreads.get();
+		if(threads >= MAX_ABANDONED_THREADS)
+			throw new IllegalStateException(threads + " agent threads are still running decisions they were abandoned in, cannot start " + threadName);
+		
+		this.threadName = threadName;
+	}
+	
+	/**
+	 * Returns the number of threads, of every watchdog, that are still running a decision they were abandoned in.
+	 */
+	static final int getAbandonedThreadCount()
+	{
+		return abandonedThreads.get();
+	}
+	
+	/**
+	 * Returns whether a decision overran and did not return when interrupted. The agent must not be asked to decide anymore.
+	 */
+	final boolean isAbandoned()
+	{
+		return abandoned;
+	}
+	
+	/**
+	 * Runs the decision and returns its result. Exceptions thrown by the decision are rethrown as is.
+	 *
+	 * @throws TimeoutException when the decision did not finish within the timeout, or the calling thread was interrupted while waiting
+	 * @throws IllegalStateException when the agent was abandoned
+	 */
+	final Action decide(Supplier<Action> decision, long timeoutNanos) throws TimeoutException
+	{
+		if(abandoned)
+			throw new IllegalStateException("The agent was abandoned in an earlier turn.");
+		
+		if(executor == null)
+			executor = createExecutor();
+		
+		// The future is done as soon as it is cancelled, the latch tells when the agent actually returned
+		CountDownLatch returned = new CountDownLatch(1);
+		AtomicBoolean settled = new AtomicBoolean(); // set by whichever comes first, the agent returning or the watchdog abandoning it
+		FutureTask<Action> future = new FutureTask<>(decision::get);
+		executor.execute(() ->
+		{
+			// Also run when the future was cancelled before it started, which returns at once
+			try
+			{
+				future.run();
+			}
+			finally
+			{
+				returned.countDown();
+				if(!settled.compareAndSet(false, true))
+					abandonedThreads.decrementAndGet();
+			}
+		});
+		try
+		{
+			return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+		}
+		catch(TimeoutException e)
+		{
+			interrupt(future, returned, settled);
+			throw e;
+		}
+		catch(InterruptedException e)
+		{
+			interrupt(future, returned, settled);
+			Thread.currentThread().interrupt();
+			throw new TimeoutException("Interrupted while waiting for the agent.");
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+	
+	private final ThreadPoolExecutor createExecutor()
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable ->
+		{
+			Thread thread = new Thread(runnable, threadName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	private final void interrupt(FutureTask<Action> future, CountDownLatch returned, AtomicBoolean settled)
+	{
+		future.cancel(true);
+		
+		boolean interrupted = false;
+		boolean hasReturned = false;
+		try
+		{
+			hasReturned = returned.await(INTERRUPT_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			interrupted = true;
+		}
+		
+		if(!hasReturned && settled.compareAndSet(false, true))
+		{
+			abandonedThreads.incrementAndGet();
+			// The worker is left running the abandoned decision, and goes away once it returns
+			abandoned = true;
+			executor.shutdown();
+			executor = null;
+		}
+		
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
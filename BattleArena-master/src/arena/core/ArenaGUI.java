@@ -1,86 +1,158 @@
 package arena.core;
 
-import javafx.animation.Animation.Status;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
-import arena.core.GameState.EntityType;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Separator;
+import javafx.scene.control.Slider;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
-import javafx.util.Duration;
+import javafx.stage.WindowEvent;
 
 final class ArenaGUI extends BorderPane
 {
 	
 	private Button btnPlayNPause;
 	private Button btnGenerate;
+	private Slider roundSlider;
+	private ChoiceBox<PlaybackSpeed> speedChoiceBox;
+	private ToggleButton btnFastForward;
+	private Button btnJumpToEnd;
 	private ImageView imageViewPlayNPause;
 	private ImageView imageViewGenerate;
 	
-	private GridPane tilesGridPane;
+	private MapView mapView;
 	
 	private final ArenaInfoPanel arenaInfoPanel;
 	
 	private VBox top;
 	
-	private Tile[][] tiles;
-	private Timeline gameLoopTimeline;
+	private AnimationTimer gameLoop; // runs at every pulse of the screen while playing
+	private long lastPulse; // the time of the previous pulse in nanoseconds, -1 before the first
+	private double pendingRounds; // the rounds due to be shown, in fractions of a round
+	private boolean jumpingToEnd; // the simulation skips to the end, and its last frame is shown as soon as it comes
+	static final int FAST_FORWARD_ROUNDS_PER_PULSE = 8;
 	private ImageDatabase imageDatabase;
+	public static final double SECS_PER_TICK = 0.25; // at 1x
+	static final int MAP_VIEWPORT_SIZE = 480; // in pixels, what fits in the window
+	
+	// Live mode: the game being played, recorded into the replay directory
 	private Game game;
-	public static final double SECS_PER_TICK = 0.25;
+	private Path replayDirectory; // null to record nothing
+	private ReplayWriter replayWriter;
+	private AsyncEventLog eventLog;
+	private MapLibrary mapLibrary; // null to generate every map
+	private int nextLibraryMap;
+	private GameSimulation simulation; // plays the game on its own thread, null when no round is being played
 	
-	//**************************GAGE FILE SAVE STUFF*********************
-	private static FileWriter fileWriter;
-	private static BufferedWriter bufferedWriter;
+	// Replay mode: the recorded match being watched
+	private ReplayReader replayReader;
+	private int replayRound;
 	
- 	public ArenaGUI(Stage stage, int mapWidth, int mapHeight, int pixelSize, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
+ 	public ArenaGUI(Stage stage, int mapWidth, int mapHeight, int pixelSize, BattleArena.Renderer renderer, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class,
+					Path replayDirectory)
 	{
-		super();
+		this(stage, mapWidth, mapHeight, pixelSize, renderer, p1Class, p2Class, new MapGenerator(mapWidth, mapHeight));
+		this.replayDirectory = replayDirectory;
+		generate();
+	}
+	
+	// Plays the maps of the library one after the other
+	public ArenaGUI(Stage stage, MapLibrary mapLibrary, int pixelSize, BattleArena.Renderer renderer, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class,
+					Path replayDirectory) throws IOException
+	{
+		this(stage, mapLibrary.getWidth(), mapLibrary.getHeight(), pixelSize, renderer, p1Class, p2Class, createMapGenerator(mapLibrary));
+		this.mapLibrary = mapLibrary;
+		this.replayDirectory = replayDirectory;
+		generate();
+	}
+	
+	private static MapGenerator createMapGenerator(MapLibrary mapLibrary) throws IOException
+	{
+		MapGenerator mapGenerator = new MapGenerator(mapLibrary.getWidth(), mapLibrary.getHeight());
+		mapGenerator.addLayouts(mapLibrary);
+		return mapGenerator;
+	}
+	
+	private ArenaGUI(Stage stage, int mapWidth, int mapHeight, int pixelSize, BattleArena.Renderer renderer, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class,
+					 MapGenerator mapGenerator)
+	{
+		this(stage, mapWidth, mapHeight, pixelSize, renderer);
 		
-		imageDatabase = new ImageDatabase();
 		game = new Game(mapWidth, mapHeight, p1Class, p2Class);
+		game.setMapGenerator(mapGenerator);
+		game.setTurnTimeout(Game.DEFAULT_TURN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS); // a match being watched keeps its pace
+		eventLog = new AsyncEventLog(System.out, EventLog.Level.Actions);
+		game.setEventLog(eventLog);
+		initializeControlButtons();
+		top.getChildren().add(arenaInfoPanel);
+		
+		// Flush the replay of an unfinished match and the pending events when the window closes
+		stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, e ->
+		{
+			stopGameLoop();
+			stopSimulation();
+			stopRecording();
+			eventLog.close();
+		});
+	}
+	
+	public ArenaGUI(Stage stage, ReplayReader replayReader, int pixelSize, BattleArena.Renderer renderer)
+	{
+		this(stage, replayReader.getWidth(), replayReader.getHeight(), pixelSize, renderer);
 		
-		arenaInfoPanel = new ArenaInfoPanel(stage, game, imageDatabase);
+		this.replayReader = replayReader;
+		initializeReplayControls();
+		top.getChildren().add(arenaInfoPanel);
 		
-		top = new VBox(10);
-		setTop(top);
+		display(replayReader.getFrame(0));
+	}
+	
+	private ArenaGUI(Stage stage, int mapWidth, int mapHeight, int pixelSize, BattleArena.Renderer renderer)
+	{
+		super();
 		
-		initializeTiles(pixelSize);
-		initializeControlButtons();
+		imageDatabase = new ImageDatabase();
+		arenaInfoPanel = new ArenaInfoPanel(stage, imageDatabase);
 		
-		top.getChildren().add(arenaInfoPanel);
+		top = new VBox(10);
+		setTop(top);
 		
-		generate();
+		initializeMapView(mapWidth, mapHeight, pixelSize, renderer);
 	}
- 	
-	private void redisplay()
+	
+	private void display(ReplayFrame frame)
 	{
-		for(int y = 0; y < game.getMap().getHeight(); y++)
+		drawCells(frame);
+		arenaInfoPanel.onRedisplay(frame);
+	}
+	
+	// The frames of the simulation only hold the cells that changed, the others hold every cell, and the map view only redraws the cells
+	// whose code changed
+	private void drawCells(ReplayFrame frame)
+	{
+		int width = frame.getWidth();
+		for(int index = 0; index < frame.getChangedCellCount(); index++)
 		{
-			for(int x = 0; x < game.getMap().getWidth(); x++)
-			{
-				Entity entity = game.getMap().getEntity(x, y);
-				tiles[x][y].setEntity(entity);
-			}
+			int cell = frame.getChangedCell(index);
+			mapView.setCell(cell % width, cell / width, frame.getChangedCellCode(index));
 		}
-		
-		arenaInfoPanel.onRedisplay();
 	}
 	
 	private void initializeControlButtons()
@@ -105,11 +177,63 @@ final class ArenaGUI extends BorderPane
 		btnPlayNPause.relocate(150, 0);
 		btnPlayNPause.setOnAction(e -> onPlayNPauseClicked());
 		
-		HBox hBox = new HBox(createSeparator(), btnGenerate, createSeparator(), btnPlayNPause, createSeparator());
+		initializeSpeedControls("Plays the simulation to the end without showing the rounds.");
+		
+		HBox hBox = new HBox(createSeparator(), btnGenerate, createSeparator(), btnPlayNPause, createSeparator(), speedChoiceBox, btnFastForward, btnJumpToEnd,
+							 createSeparator());
 		hBox.setPadding(new Insets(10, 0, 10, 0));
 		top.getChildren().add(hBox);
 	}
 	
+	private void initializeReplayControls()
+	{
+		// Play & Pause
+		btnPlayNPause = new Button();
+		btnPlayNPause.setTooltip(new Tooltip("Plays or pauses the replay."));
+		imageViewPlayNPause = new ImageView(imageDatabase.play);
+		imageViewPlayNPause.setFitWidth(32);
+		imageViewPlayNPause.setFitHeight(32);
+		btnPlayNPause.setGraphic(imageViewPlayNPause);
+		btnPlayNPause.setOnAction(e -> onPlayNPauseClicked());
+		
+		// Round seeking
+		roundSlider = new Slider(0, replayReader.getRounds(), 0);
+		roundSlider.setTooltip(new Tooltip("Jumps to any round of the replay."));
+		roundSlider.setBlockIncrement(1);
+		roundSlider.setMajorTickUnit(Game.ROUND_PER_STORM_ADVANCE);
+		roundSlider.setMinorTickCount(0);
+		roundSlider.setSnapToTicks(false);
+		roundSlider.setShowTickMarks(true);
+		roundSlider.setPrefWidth(300);
+		roundSlider.valueProperty().addListener((observable, oldValue, newValue) -> showReplayRound((int) Math.round(newValue.doubleValue())));
+		
+		initializeSpeedControls("Jumps to the end of the replay.");
+		
+		HBox hBox = new HBox(createSeparator(), btnPlayNPause, createSeparator(), roundSlider, createSeparator(), speedChoiceBox, btnFastForward, btnJumpToEnd,
+							 createSeparator());
+		hBox.setPadding(new Insets(10, 0, 10, 0));
+		top.getChildren().add(hBox);
+	}
+	
+	private void initializeSpeedControls(String jumpToEndTooltip)
+	{
+		// Speed
+		speedChoiceBox = new ChoiceBox<>();
+		speedChoiceBox.setTooltip(new Tooltip("Sets how fast the rounds are shown."));
+		speedChoiceBox.getItems().addAll(PlaybackSpeed.values());
+		speedChoiceBox.setValue(PlaybackSpeed.Normal);
+		
+		// Fast-forward
+		btnFastForward = new ToggleButton(">>");
+		btnFastForward.setTooltip(new Tooltip("Shows " + FAST_FORWARD_ROUNDS_PER_PULSE + " rounds per frame while pressed."));
+		btnFastForward.setOnAction(e -> onFastForwardClicked());
+		
+		// Jump to end
+		btnJumpToEnd = new Button(">|");
+		btnJumpToEnd.setTooltip(new Tooltip(jumpToEndTooltip));
+		btnJumpToEnd.setOnAction(e -> onJumpToEndClicked());
+	}
+	
 	private Separator createSeparator()
 	{
 		Separator separator = new Separator(Orientation.HORIZONTAL);
@@ -118,36 +242,25 @@ final class ArenaGUI extends BorderPane
 		return separator;
 	}
 	
-	private void initializeTiles(int pixelSize)
+	private void initializeMapView(int mapWidth, int mapHeight, int pixelSize, BattleArena.Renderer renderer)
 	{
-		tilesGridPane = new GridPane();
-		Map map = game.getMap();
+		if(renderer == BattleArena.Renderer.Canvas)
+			mapView = new CanvasMapView(imageDatabase, mapWidth, mapHeight, pixelSize);
+		else
+			mapView = new TileMapView(imageDatabase, mapWidth, mapHeight, pixelSize);
 		
-		tiles = new Tile[map.getWidth()][map.getHeight()];
-		for(int y = 0; y < map.getHeight(); y++)
+		// Maps bigger than the window scroll
+		if(mapWidth * pixelSize > MAP_VIEWPORT_SIZE || mapHeight * pixelSize > MAP_VIEWPORT_SIZE)
 		{
-			for(int x = 0; x < map.getWidth(); x++)
-			{
-				Entity entity = map.getEntity(x, y);
-				Tile tile = new Tile(imageDatabase, entity, pixelSize);
-				tiles[x][y] = tile;
-				tilesGridPane.add(tile, x, y);
-			}
+			ScrollPane scrollPane = new ScrollPane(mapView.getNode());
+			scrollPane.setPrefViewportWidth(Math.min(mapWidth * pixelSize, MAP_VIEWPORT_SIZE));
+			scrollPane.setPrefViewportHeight(Math.min(mapHeight * pixelSize, MAP_VIEWPORT_SIZE));
+			setBottom(scrollPane);
 		}
-		
-		setBottom(tilesGridPane);
-		
-		//[TODO]!!!!!!!!!!!!!!!!!!
-		try
+		else
 		{
-			//fileWriter = new FileWriter("ArenaRoundSave.txt",true);
-			//bufferedWriter = new BufferedWriter(fileWriter);
-		}
-		catch (Exception e)
-		{
-			e.printStackTrace();
+			setBottom(mapView.getNode());
 		}
-		
 	}
 	
 	private void onGenerateClicked()
@@ -160,14 +273,6 @@ final class ArenaGUI extends BorderPane
 		if(isRunning()) // Running, so pause
 		{
 			stopGameLoop();
-			//[TODO]!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-			try {
-				saveRoundInCSV();
-				bufferedWriter.close();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
 		}
 		else // Not running, so start
 		{
@@ -175,165 +280,255 @@ final class ArenaGUI extends BorderPane
 		}
 	}
 	
+	private void onFastForwardClicked()
+	{
+		if(btnFastForward.isSelected() && !isRunning())
+			startGameLoop();
+	}
+	
+	private void onJumpToEndClicked()
+	{
+		if(replayReader != null)
+		{
+			stopGameLoop();
+			roundSlider.setValue(replayReader.getRounds());
+			return;
+		}
+		
+		if(!isRunning())
+			startGameLoop();
+		simulation.skipToEnd();
+		jumpingToEnd = true;
+	}
+	
 	private void stopGameLoop()
 	{
-		if(gameLoopTimeline != null)
+		if(gameLoop != null)
 		{
-			gameLoopTimeline.stop();
-			gameLoopTimeline = null;
+			gameLoop.stop();
+			gameLoop = null;
 		}
+		jumpingToEnd = false;
+		btnFastForward.setSelected(false);
+		if(simulation != null)
+			simulation.stopSkipping(); // a jump to the end that was paused shows the rounds again when resumed
 		
 		imageViewPlayNPause.setImage(imageDatabase.play);
 	}
 	
 	private void startGameLoop()
 	{
-		gameLoopTimeline = new Timeline();
+		if(replayReader != null)
+		{
+			// Watching a replay: start over when it already reached the end
+			if(replayRound >= replayReader.getRounds())
+				roundSlider.setValue(0);
+		}
+		else if(simulation == null)
+		{
+			simulation = new GameSimulation(game, this::recordRound, GameSimulation.DEFAULT_CAPACITY);
+			simulation.start();
+		}
+		
+		lastPulse = -1;
+		pendingRounds = 0;
+		gameLoop = new AnimationTimer()
+		{
+			@Override
+			public void handle(long now)
+			{
+				onPulse(now);
+			}
+		};
+		gameLoop.start();
+		
+		imageViewPlayNPause.setImage(imageDatabase.pause);
+	}
+	
+	private void onPulse(long now)
+	{
+		PlaybackSpeed speed = speedChoiceBox.getValue();
+		if(jumpingToEnd)
+			pendingRounds = Double.POSITIVE_INFINITY;
+		else if(btnFastForward.isSelected())
+			pendingRounds = FAST_FORWARD_ROUNDS_PER_PULSE;
+		else if(lastPulse >= 0)
+			pendingRounds += (now - lastPulse) / 1e9 * speed.getRoundsPerSecond();
+		lastPulse = now;
 		
-		gameLoopTimeline.getKeyFrames().add(new KeyFrame(Duration.seconds(SECS_PER_TICK), e ->
+		if(replayReader != null)
+			onReplayPulse(speed);
+		else
+			onGamePulse();
+	}
+	
+	private void onGamePulse()
+	{
+		// The cells of every frame due are drawn, since each only holds the cells its round changed, but the panel only shows the newest
+		ReplayFrame frame = null;
+		while(pendingRounds >= 1)
 		{
-			game.tick();
-			redisplay();
-			//*************************
-			
-			saveRoundInCSV();
-			
-			//****************
-			if(game.isGameOver())
+			ReplayFrame next = simulation.poll();
+			if(next == null)
 			{
-				stopGameLoop();
+				// The agents are slower than the playback: show the next rounds as they come rather than catching up later
+				pendingRounds = Math.min(pendingRounds, 1);
+				break;
 			}
-		}));
+			
+			drawCells(next);
+			frame = next;
+			pendingRounds--;
+		}
 		
-		gameLoopTimeline.setCycleCount(Timeline.INDEFINITE);
-		gameLoopTimeline.play();
+		if(frame != null)
+			arenaInfoPanel.onRedisplay(frame);
 		
-		imageViewPlayNPause.setImage(imageDatabase.pause);
+		if(simulation.isDone())
+		{
+			Throwable failure = simulation.getFailure();
+			stopGameLoop();
+			stopSimulation();
+			stopRecording();
+			if(failure != null)
+				showFailure(failure);
+		}
+	}
+	
+	// The game is left in the middle of a round, so it cannot be played on until a new map is generated
+	private void showFailure(Throwable failure)
+	{
+		failure.printStackTrace();
+		setPlayControlsDisabled(true);
+		
+		String message = "The match stopped in round " + game.getRound() + " because of " + failure + ".\n";
+		message += "Its replay has no outcome. Generate a new map to play again.";
+		Alert alert = new Alert(AlertType.ERROR, message);
+		alert.setHeaderText("The simulation failed");
+		alert.show();
+	}
+	
+	private void setPlayControlsDisabled(boolean disabled)
+	{
+		btnPlayNPause.setDisable(disabled);
+		btnFastForward.setDisable(disabled);
+		btnJumpToEnd.setDisable(disabled);
+	}
+	
+	private void onReplayPulse(PlaybackSpeed speed)
+	{
+		// Every round of a replay is available, so at full speed it advances a round per pulse
+		if(speed == PlaybackSpeed.Max && !btnFastForward.isSelected())
+			pendingRounds = 1;
+		
+		int rounds = (int) Math.min(pendingRounds, replayReader.getRounds() - replayRound);
+		if(rounds > 0)
+		{
+			pendingRounds -= rounds;
+			roundSlider.setValue(replayRound + rounds);
+		}
+		
+		if(replayRound >= replayReader.getRounds())
+		{
+			stopGameLoop();
+		}
+	}
+	
+	private void showReplayRound(int round)
+	{
+		if(round == replayRound)
+			return;
+		
+		replayRound = round;
+		display(replayReader.getFrame(round));
 	}
 	
 	private void generate()
 	{
 		stopGameLoop();
-		game.generateMap();
+		stopSimulation();
+		stopRecording();
+		if(mapLibrary != null)
+		{
+			game.generateMap(mapLibrary.getSeed(nextLibraryMap));
+			nextLibraryMap = (nextLibraryMap + 1) % mapLibrary.getMapCount();
+		}
+		else
+		{
+			game.generateMap();
+		}
 		game.setRound(0);
-		redisplay();
+		setPlayControlsDisabled(false);
+		startRecording();
+		display(ReplayFrame.capture(game));
 	}
 	
 	private boolean isRunning()
 	{
-		if(gameLoopTimeline == null)
-			return false;
+		return gameLoop != null;
+	}
+	
+	private void stopSimulation()
+	{
+		if(simulation == null)
+			return;
 		
-		return gameLoopTimeline.getStatus() == Status.RUNNING;
+		simulation.stop();
+		simulation = null;
 	}
 	
 	
-	//*******************************GAGE'S ATTEMPTED SAVING ROUNDS IN TEXT FILE******************************************
-	//[TODO]
-	private void saveRoundInCSV()
+	private void startRecording()
 	{
+		if(replayDirectory == null)
+			return;
+		
+		String fileName = ReplayFormat.getFileName(game.getAgent1().getClass().getName(), game.getAgent2().getClass().getName(), game.getSeed());
 		try
 		{
-			fileWriter = new FileWriter("ArenaRoundSave.txt",true);
-			bufferedWriter = new BufferedWriter(fileWriter);
-			//bufferedWriter = new BufferedWriter(fileWriter);
-			for(int i = 0; i < tiles.length; i++)
-			{
-				String row = "";
-				//System.out.println();
-				for(int j = 0; j< tiles[i].length; j++)
-				{
-					//System.out.print(returnSymbolBasedOnTileEntity(tiles[j][i]));
-					row +=returnSymbolBasedOnTileEntity(tiles[j][i]);
-				}
-				bufferedWriter.write(row);
-				bufferedWriter.write("\n");
-			}
-			//bufferedWriter.write("------------------------------------------------------------");
-			//bufferedWriter.write("\n");
-			bufferedWriter.close();
+			Files.createDirectories(replayDirectory);
+			replayWriter = new ReplayWriter(replayDirectory.resolve(fileName));
+			replayWriter.writeHeader(game);
 		}
-		catch(Exception e)
+		catch(IOException e)
 		{
 			e.printStackTrace();
+			stopRecording();
 		}
 	}
 	
-	
-	//[TODO] MAKE THIS WORK AND IMPLEMENT TO CLEAR FILE EVERY TIME A NEW MATCH IS STARTED!
-	private void clearRoundFile()
+	// Runs on the thread of the simulation
+	private void recordRound()
 	{
-		String filename = "ArenaRoundSave.txt";
-		BufferedReader br = null;
+		if(replayWriter == null)
+			return;
+		
 		try
 		{
-			FileReader fr = new FileReader(filename);
-			br = new BufferedReader(fr);
-			fileWriter = new FileWriter(filename,true);
-			bufferedWriter = new BufferedWriter(fileWriter);
-			String line; //used to get each individual line of the file.
-			
-			// while line is equal to the next line of the buffered reader is not equal to null
-			// this means read the next line in the file until there are not any more line to read
-			while (  (line = br.readLine()) != null ) 
-			{
-				bufferedWriter.write("");
-				bufferedWriter.write("\n");
-			}	
+			replayWriter.writeRound(game);
+			if(game.isGameOver())
+				replayWriter.writeEnd(game);
 		}
-		catch (Exception e) 
+		catch(IOException e)
 		{
-
 			e.printStackTrace();
-		}
-		finally
-		{
-			try 
-			{
-				br.close();
-			}
-			catch(Exception e)
-			{
-				System.out.println("[ERROR NO BUFFERED READER TO CLOSE]");
-			}
-			
+			stopRecording();
 		}
 	}
-
-	//[TODO]
-	private char returnSymbolBasedOnTileEntity(Tile tile)
+	
+	private void stopRecording()
 	{
-		Entity tileEntity = tile.getEntity();
-		switch(Entity.getEntityType(tileEntity))
-		{
-		case Wall:
-			return '#';
-			
-		case Player:
-			return '@';
-			
-		case Storm:
-			return 'X';
-			
-		case HealthPack:
-			return '+';
-			
-		case Empty:
-			return '.';
-			
-		case Mine:
-			return '%';
-			
-		case Projectile:
-			return '*';
-			
-		default:
-			throw new IllegalStateException("Unknown entry in tile: (" + tile.getLayoutX() + ", "+ tile.getLayoutY()+")");
+		if(replayWriter == null)
+			return;
 		
+		try
+		{
+			replayWriter.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
 		}
+		replayWriter = null;
 	}
-	
-	
-	
-	
-}
\ No newline at end of file
+}
@@ -0,0 +1,323 @@
+package arena.core;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+
+/**
+ * The <code>AsyncEventLog</code> class prints the events of matches from a background thread, so that a match never waits on the console.
+ * Events are stored as plain fields in a preallocated ring buffer, and the writer thread formats and prints them in batches, flushing the
+ * stream once per batch instead of once per line. When the ring is full, the match waits for the writer to catch up, so no event is lost.
+ *
+ * <p>
+ * To print every action of a headless match, simply call:
+ * </p>
+ * <pre>
+ * try(AsyncEventLog eventLog = new AsyncEventLog(System.out, EventLog.Level.Actions))
+ * {
+ *     HeadlessMatch match = new HeadlessMatch(SimpleAI.class, RandomAI.class);
+ *     match.setEventLog(eventLog);
+ *     match.play();
+ * }
+ * </pre>
+ *
+ * <p>
+ * A single log can be shared by several threads; the events are printed in the order they were logged.
+ * </p>
+ *
+ * @author ERAU AI Club
+ */
+public final class AsyncEventLog implements EventLog, Closeable
+{
+	/** The number of events the ring buffer holds by default. */
+	public static final int DEFAULT_CAPACITY = 4096;
+	
+	private static final byte EVENT_ROUND = 0;
+	private static final byte EVENT_ACTION = 1;
+	private static final byte EVENT_TIMEOUT = 2;
+	private static final byte EVENT_ERROR = 3;
+	private static final Action[] ACTIONS = Action.values();
+	
+	private final Level level;
+	private final PrintStream out;
+	private final Thread writer;
+	
+	// Ring buffer, an event is stored at index (sequence & mask) in every array
+	private final int mask;
+	private final byte[] eventTypes;
+	private final short[] rounds;
+	private final String[] playerNames;
+	private final String[] agentNames;
+	private final byte[] actions;
+	private final boolean[] successful;
+	private final long[] timeouts;
+	private final RuntimeException[] errors;
+	private long head; // sequence of the next event to log
+	private long tail; // sequence of the next event to print
+	private boolean closed;
+	
+	/**
+	 * Creates a log with the default capacity.
+	 *
+	 * @param out - the stream to print the events to
+	 * @param level - the most detailed level to record
+	 */
+	public AsyncEventLog(PrintStream out, Level level)
+	{
+		this(out, level, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a log with the specified capacity, rounded up to a power of 2.
+	 *
+	 * @param out - the stream to print the events to
+	 * @param level - the most detailed level to record
+	 * @param capacity - the number of events that can wait to be printed
+	 *
+	 * @throws IllegalArgumentException when the capacity is not positive
+	 */
+	public AsyncEventLog(PrintStream out, Level level, int capacity)
+	{
+		if(capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Capacity not in range [1..2^30]: " + capacity);
+		
+		this.out = out;
+		this.level = level;
+		
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+			size <<= 1;
+		mask = size - 1;
+		eventTypes = new byte[size];
+		rounds = new short[size];
+		playerNames = new String[size];
+		agentNames = new String[size];
+		actions = new byte[size];
+		successful = new boolean[size];
+		timeouts = new long[size];
+		errors = new RuntimeException[size];
+		
+		writer = new Thread(this::writeEvents, "AsyncEventLog");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	@Override
+	public final Level getLevel()
+	{
+		return level;
+	}
+	
+	@Override
+	public final void logRound(int round)
+	{
+		if(!isEnabled(Level.Rounds))
+			return;
+		
+		synchronized(this)
+		{
+			int slot = claimSlot();
+			if(slot < 0)
+				return;
+			
+			eventTypes[slot] = EVENT_ROUND;
+			rounds[slot] = (short) round;
+			publish();
+		}
+	}
+	
+	@Override
+	public final void logAction(int round, String playerName, String agentName, Action action, boolean successful)
+	{
+		if(!isEnabled(Level.Actions))
+			return;
+		
+		synchronized(this)
+		{
+			int slot = claimSlot();
+			if(slot < 0)
+				return;
+			
+			eventTypes[slot] = EVENT_ACTION;
+			rounds[slot] = (short) round;
+			playerNames[slot] = playerName;
+			agentNames[slot] = agentName;
+			actions[slot] = (byte) action.ordinal();
+			this.successful[slot] = successful;
+			publish();
+		}
+	}
+	
+	@Override
+	public final void logTimeout(int round, String playerName, String agentName, long timeoutNanos)
+	{
+		if(!isEnabled(Level.Rounds))
+			return;
+		
+		synchronized(this)
+		{
+			int slot = claimSlot();
+			if(slot < 0)
+				return;
+			
+			eventTypes[slot] = EVENT_TIMEOUT;
+			rounds[slot] = (short) round;
+			playerNames[slot] = playerName;
+			agentNames[slot] = agentName;
+			timeouts[slot] = timeoutNanos;
+			publish();
+		}
+	}
+	
+	@Override
+	public final void logError(int round, String playerName, String agentName, RuntimeException error)
+	{
+		if(!isEnabled(Level.Rounds))
+			return;
+		
+		synchronized(this)
+		{
+			int slot = claimSlot();
+			if(slot < 0)
+				return;
+			
+			eventTypes[slot] = EVENT_ERROR;
+			rounds[slot] = (short) round;
+			playerNames[slot] = playerName;
+			agentNames[slot] = agentName;
+			errors[slot] = error;
+			publish();
+		}
+	}
+	
+	// Waits for a free slot, returns -1 once the log is closed
+	private final int claimSlot()
+	{
+		boolean interrupted = false;
+		while(head - tail > mask && !closed)
+		{
+			try
+			{
+				wait();
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		
+		return closed ? -1 : (int) (head & mask);
+	}
+	
+	private final void publish()
+	{
+		// The writer only waits when the ring is empty
+		if(head++ == tail)
+			notifyAll();
+	}
+	
+	private final void writeEvents()
+	{
+		StringBuilder batch = new StringBuilder(8192);
+		while(true)
+		{
+			long from, to;
+			synchronized(this)
+			{
+				while(head == tail && !closed)
+				{
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException e)
+					{
+						// Only close() stops the writer
+					}
+				}
+				
+				if(head == tail)
+					return;
+				
+				from = tail;
+				to = head;
+			}
+			
+			// The slots of [from, to) are not reused before tail moves past them
+			for(long sequence = from; sequence < to; sequence++)
+				formatEvent((int) (sequence & mask), batch);
+			out.print(batch);
+			out.flush();
+			batch.setLength(0);
+			
+			synchronized(this)
+			{
+				tail = to;
+				notifyAll();
+			}
+		}
+	}
+	
+	private final void formatEvent(int slot, StringBuilder builder)
+	{
+		switch(eventTypes[slot])
+		{
+			case EVENT_ROUND:
+				builder.append("Round ").append(rounds[slot]).append(" / ").append(Game.MAX_ROUNDS).append('\n');
+				break;
+			
+			case EVENT_ACTION:
+				builder.append("\t[").append(playerNames[slot]).append(" - ").append(agentNames[slot]).append("] ");
+				builder.append(successful[slot] ? "Successfully performed " : "Failed to perform ").append(ACTIONS[actions[slot]]).append('\n');
+				break;
+			
+			case EVENT_TIMEOUT:
+				builder.append("\t[").append(playerNames[slot]).append(" - ").append(agentNames[slot]).append("] ");
+				builder.append("Timed out after ").append(timeouts[slot] / 1000000).append(" ms, performs NoAction").append('\n');
+				break;
+			
+			case EVENT_ERROR:
+				builder.append("\t[").append(playerNames[slot]).append(" - ").append(agentNames[slot]).append("] ");
+				builder.append("Threw ").append(errors[slot]).append(", performs NoAction").append('\n');
+				errors[slot] = null; // the slot must not keep the exception alive
+				break;
+			
+			default:
+				throw new IllegalStateException("Unknown event type: " + eventTypes[slot]);
+		}
+	}
+	
+	/**
+	 * Prints the events that are still waiting, then stops the writer thread. Events logged afterwards are discarded.
+	 */
+	@Override
+	public final void close()
+	{
+		synchronized(this)
+		{
+			if(closed)
+				return;
+			
+			closed = true;
+			notifyAll();
+		}
+		
+		boolean interrupted = false;
+		while(writer.isAlive())
+		{
+			try
+			{
+				writer.join();
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -1,5 +1,9 @@
 package arena.core;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
@@ -15,11 +19,37 @@ import arena.agents.RandomAI;
  * <pre>
  * BattleArena.startArena(SimpleAI.class, RandomAI.class);
  * </pre>
+ * <p>
+ * To record every match into the <code>replays</code> folder, call the following before starting the arena, or set the
+ * <code>arena.replays</code> system property to the folder:
+ * </p>
+ * <pre>
+ * BattleArena.setReplayDirectory(Paths.get("replays"));
+ * </pre>
+ * <p>
+ * To watch a recorded match again, simply call:
+ * </p>
+ * <pre>
+ * BattleArena.startReplay(Paths.get("replays/SimpleAI-vs-RandomAI-42.replay"));
+ * </pre>
  *  
  * @author ERAU AI Club
  */
 public class BattleArena extends Application
 {
+	/**
+	 * The <code>Renderer</code> enum represents the ways the arena can draw the map.
+	 *
+	 * @author ERAU AI Club
+	 */
+	public enum Renderer
+	{
+		/** Every cell is a node of the scene graph. Suits the usual map sizes. */
+		Tiles,
+		/** The whole map is drawn onto a single canvas. Suits big maps, such as 200x200. */
+		Canvas
+	}
+	
 	// The number of columns in the map
 	private static int mapWidth;
 	
@@ -29,12 +59,42 @@ public class BattleArena extends Application
 	// The size, in pixels, of each cell
 	private static int pixelSize;
 	
+	// How the map is drawn
+	private static Renderer renderer = Renderer.Tiles;
+	
 	// The class of the 1st AI agent
 	private static Class<? extends PlayerAI> p1Class;
 	
 	// The class of the 2nd AI agent
 	private static Class<? extends PlayerAI> p2Class;
 	
+	// The recorded match to watch, null to play a new match
+	private static Path replayFile;
+	
+	// The maps to play one after the other, null to generate every map
+	private static MapLibrary mapLibrary;
+	
+	// The directory every match is recorded into, null to record nothing
+	private static Path replayDirectory = getPathProperty("arena.replays");
+	
+	/**
+	 * Records every match played in the arena into the specified directory, as one replay file per match, which can be watched again
+	 * with {@link #startReplay(Path)}. The directory is created if missing. By default, nothing is recorded unless the
+	 * <code>arena.replays</code> system property is set to a directory.
+	 * 
+	 * @param replayDirectory - the directory to write the replays into, or null to record nothing
+	 */
+	public static void setReplayDirectory(Path replayDirectory)
+	{
+		BattleArena.replayDirectory = replayDirectory;
+	}
+	
+	private static Path getPathProperty(String key)
+	{
+		String value = System.getProperty(key);
+		return (value != null) ? Paths.get(value) : null;
+	}
+	
 	/**
 	 * Starts the arena application with the default sizes (20x20 map size) and 24 pixel size.
 	 * The parameters are the classes of the players, in the format of: <code>YourClassName.class</code>.
@@ -72,6 +132,29 @@ public class BattleArena extends Application
 	 * @param p2Class - the 2nd player's class 
 	 */
 	public static void startArena(int mapWidth, int mapHeight, int pixelSize, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
+	{
+		startArena(mapWidth, mapHeight, pixelSize, Renderer.Tiles, p1Class, p2Class);
+	}
+	
+	/**
+	 * Starts the arena application with the specified map size, pixel size and renderer.
+	 * The parameters are the classes of the players, in the format of: <code>YourClassName.class</code>.
+	 * 
+	 * <p>
+	 * For example, the following code will start an arena game with RandomAI versus CowardAI at a map of size 200x200, drawn onto a canvas with 8 pixels for each cell.
+	 * </p>
+	 * <pre>
+	 * BattleArena.startArena(200, 200, 8, BattleArena.Renderer.Canvas, RandomAI.class, CowardAI.class);
+	 * </pre>
+	 * 
+	 * @param mapWidth - the width of the map (8 is minimum)
+	 * @param mapHeight - the height of the map (8 is minimum)
+	 * @param pixelSize - the pixel size of each cell (8 is minimum)
+	 * @param renderer - how the map is drawn
+	 * @param p1Class - the 1st player's class
+	 * @param p2Class - the 2nd player's class 
+	 */
+	public static void startArena(int mapWidth, int mapHeight, int pixelSize, Renderer renderer, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
 	{
 		if(mapWidth < 8)
 		{
@@ -103,19 +186,127 @@ public class BattleArena extends Application
 			p2Class = RandomAI.class;
 		}
 		
+		if(renderer == null)
+		{
+			System.err.println("Error in startArena(): The renderer cannot be null. Will use Tiles instead.");
+			renderer = Renderer.Tiles;
+		}
+		
 		BattleArena.mapWidth = mapWidth;
 		BattleArena.mapHeight = mapHeight;
 		BattleArena.pixelSize = pixelSize;
+		BattleArena.renderer = renderer;
 		BattleArena.p1Class = p1Class;
 		BattleArena.p2Class = p2Class;
 		
 		Application.launch(BattleArena.class);
 	}
 	
+	/**
+	 * Starts the arena application with the maps of the specified {@link MapLibrary}, played one after the other, and the specified pixel size.
+	 * The map size is the size of the maps of the library.
+	 * 
+	 * @param mapLibrary - the map library file
+	 * @param pixelSize - the pixel size of each cell (8 is minimum)
+	 * @param p1Class - the 1st player's class
+	 * @param p2Class - the 2nd player's class 
+	 */
+	public static void startArena(Path mapLibrary, int pixelSize, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
+	{
+		startArena(mapLibrary, pixelSize, Renderer.Tiles, p1Class, p2Class);
+	}
+	
+	/**
+	 * Starts the arena application with the maps of the specified {@link MapLibrary}, played one after the other, the specified pixel size and renderer.
+	 * The map size is the size of the maps of the library.
+	 * 
+	 * @param mapLibrary - the map library file
+	 * @param pixelSize - the pixel size of each cell (8 is minimum)
+	 * @param renderer - how the map is drawn
+	 * @param p1Class - the 1st player's class
+	 * @param p2Class - the 2nd player's class 
+	 */
+	public static void startArena(Path mapLibrary, int pixelSize, Renderer renderer, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
+	{
+		try
+		{
+			MapLibrary library = MapLibrary.open(mapLibrary);
+			if(library.getMapCount() > 0)
+			{
+				BattleArena.mapLibrary = library;
+				startArena(library.getWidth(), library.getHeight(), pixelSize, renderer, p1Class, p2Class);
+				return;
+			}
+			System.err.println("Error in startArena(): The map library " + mapLibrary + " has no maps. Will generate 20x20 maps instead.");
+		}
+		catch(IOException e)
+		{
+			System.err.println("Error in startArena(): Cannot read the map library " + mapLibrary + ": " + e.getMessage() + ". Will generate 20x20 maps instead.");
+		}
+		
+		startArena(20, 20, pixelSize, renderer, p1Class, p2Class);
+	}
+	
+	/**
+	 * Starts the arena application to watch a recorded match, with 24 pixel size.
+	 * 
+	 * @param replayFile - the replay file of the match
+	 */
+	public static void startReplay(Path replayFile)
+	{
+		startReplay(replayFile, 24);
+	}
+	
+	/**
+	 * Starts the arena application to watch a recorded match, with the specified pixel size.
+	 * The replay can be played at the usual speed, or any round can be jumped to with the slider.
+	 * 
+	 * @param replayFile - the replay file of the match
+	 * @param pixelSize - the pixel size of each cell (8 is minimum)
+	 */
+	public static void startReplay(Path replayFile, int pixelSize)
+	{
+		startReplay(replayFile, pixelSize, Renderer.Tiles);
+	}
+	
+	/**
+	 * Starts the arena application to watch a recorded match, with the specified pixel size and renderer.
+	 * 
+	 * @param replayFile - the replay file of the match
+	 * @param pixelSize - the pixel size of each cell (8 is minimum)
+	 * @param renderer - how the map is drawn
+	 */
+	public static void startReplay(Path replayFile, int pixelSize, Renderer renderer)
+	{
+		if(pixelSize < 8)
+		{
+			System.err.println("Error in startReplay(): The pixel size must be 8 or greater, was given " + pixelSize + ". Will use 8 instead.");
+			pixelSize = 8;
+		}
+		
+		if(renderer == null)
+		{
+			System.err.println("Error in startReplay(): The renderer cannot be null. Will use Tiles instead.");
+			renderer = Renderer.Tiles;
+		}
+		
+		BattleArena.replayFile = replayFile;
+		BattleArena.pixelSize = pixelSize;
+		BattleArena.renderer = renderer;
+		
+		Application.launch(BattleArena.class);
+	}
+	
 	@Override
 	public void start(Stage stage) throws Exception
 	{
-		ArenaGUI pane = new ArenaGUI(stage, mapWidth, mapHeight, pixelSize, p1Class, p2Class);
+		ArenaGUI pane;
+		if(replayFile != null)
+			pane = new ArenaGUI(stage, ReplayReader.open(replayFile), pixelSize, renderer);
+		else if(mapLibrary != null)
+			pane = new ArenaGUI(stage, mapLibrary, pixelSize, renderer, p1Class, p2Class, replayDirectory);
+		else
+			pane = new ArenaGUI(stage, mapWidth, mapHeight, pixelSize, renderer, p1Class, p2Class, replayDirectory);
 		
 		Scene scene = new Scene(pane);
 		scene.getStylesheets().add("/res/style.css");
@@ -0,0 +1,60 @@
+package arena.core;
+
+import java.util.Arrays;
+
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+
+/**
+ * Draws the map onto a single {@link Canvas}, so the scene graph holds one node whatever the size of the map. Every cell code has
+ * its picture in an atlas rendered once by {@link ImageDatabase#createCellAtlas(int)}, floor, tint and facing included, so drawing
+ * a cell is a single image copy and never runs an effect.
+ */
+final class CanvasMapView implements MapView
+{
+	private final Canvas canvas;
+	private final GraphicsContext graphics;
+	private final Image atlas;
+	private final int pixelSize;
+	private final int mapWidth;
+	private final byte[] cells; // what each cell shows, indexed by y * width + x
+	
+	CanvasMapView(ImageDatabase imageDatabase, int mapWidth, int mapHeight, int pixelSize)
+	{
+		this.pixelSize = pixelSize;
+		this.mapWidth = mapWidth;
+		canvas = new Canvas(mapWidth * pixelSize, mapHeight * pixelSize);
+		graphics = canvas.getGraphicsContext2D();
+		graphics.setImageSmoothing(false);
+		atlas = imageDatabase.createCellAtlas(pixelSize);
+		
+		cells = new byte[mapWidth * mapHeight];
+		Arrays.fill(cells, (byte) -1);
+		for(int y = 0; y < mapHeight; y++)
+		{
+			for(int x = 0; x < mapWidth; x++)
+			{
+				setCell(x, y, (byte) GameState.EntityType.Empty.ordinal());
+			}
+		}
+	}
+	
+	@Override
+	public final Node getNode()
+	{
+		return canvas;
+	}
+	
+	@Override
+	public final void setCell(int x, int y, byte cell)
+	{
+		int index = y * mapWidth + x;
+		if(cells[index] == cell)
+			return;
+		
+		cells[index] = cell;
+		graphics.drawImage(atlas, cell * pixelSize, 0, pixelSize, pixelSize, x * pixelSize, y * pixelSize, pixelSize, pixelSize);
+	}
+}
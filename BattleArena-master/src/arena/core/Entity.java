@@ -7,19 +7,29 @@ abstract class Entity
 	private int x;
 	private int y;
 	private boolean destroyed;
+	private final int id;
 	final Map map;
 	
 	Entity(Map map, int x, int y)
 	{
 		this.map = map;
+		this.id = map.nextEntityId();
+		this.x = x;
+		this.y = y;
+	}
+	
+	Entity(Map map, int x, int y, int id)
+	{
+		this.map = map;
+		this.id = id;
 		this.x = x;
 		this.y = y;
 	}
 	
 	final void destroy()
 	{
-		map.destroy(this);
 		destroyed = true;
+		map.destroy(this);
 	}
 	
 	void onUpdate() {}
@@ -84,6 +94,11 @@ abstract class Entity
 		return y;
 	}
 	
+	final int getId()
+	{
+		return id;
+	}
+	
 	final boolean isDestroyed()
 	{
 		return destroyed;
@@ -91,11 +106,17 @@ abstract class Entity
 
 	final void setX(int x)
 	{
+		int oldX = this.x;
 		this.x = Math.max(0, Math.min(map.getWidth() - 1, x));
+		if(this.x != oldX)
+			map.onEntityMoved(this, oldX, y);
 	}
 
 	final void setY(int y)
 	{
+		int oldY = this.y;
 		this.y = Math.max(0, Math.min(map.getHeight() - 1, y));
+		if(this.y != oldY)
+			map.onEntityMoved(this, x, oldY);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package arena.core;
+
+/**
+ * The <code>EventLog</code> interface receives what happens during a match: the start of every round, the outcome of every action and the
+ * turns agents forfeited by running out of time or throwing an exception.
+ * The events are structured, so a log can count, filter or store them without parsing text.
+ *
+ * <p>
+ * The game asks {@link #isEnabled(Level)} before building an event, so a disabled level costs a single call per event.
+ * Matches log to {@link #OFF} unless told otherwise, use {@link AsyncEventLog} to print the events without slowing the match down.
+ * </p>
+ *
+ * @author ERAU AI Club
+ */
+public interface EventLog
+{
+	/**
+	 * The <code>Level</code> enum represents how detailed a log is. Each level includes the events of the levels before it.
+	 *
+	 * @author ERAU AI Club
+	 */
+	public enum Level
+	{
+		/** Nothing is logged. */
+		Off,
+		
+		/** The start of every round, the timeouts and the exceptions thrown by agents are logged. */
+		Rounds,
+		
+		/** The action of every player is logged as well. */
+		Actions
+	}
+	
+	/** A log that discards every event. */
+	public static final EventLog OFF = new EventLog()
+	{
+		@Override
+		public Level getLevel()
+		{
+			return Level.Off;
+		}
+		
+		@Override
+		public void logRound(int round)
+		{
+		}
+		
+		@Override
+		public void logAction(int round, String playerName, String agentName, Action action, boolean successful)
+		{
+		}
+		
+		@Override
+		public void logTimeout(int round, String playerName, String agentName, long timeoutNanos)
+		{
+		}
+		
+		@Override
+		public void logError(int round, String playerName, String agentName, RuntimeException error)
+		{
+		}
+	};
+	
+	/**
+	 * Returns the most detailed level this log records.
+	 *
+	 * @return the level of the log
+	 */
+	public Level getLevel();
+	
+	/**
+	 * Returns whether the events of the specified level are recorded.
+	 *
+	 * @param level - the level of the event
+	 *
+	 * @return true if the events are recorded
+	 */
+	public default boolean isEnabled(Level level)
+	{
+		return level != Level.Off && level.compareTo(getLevel()) <= 0;
+	}
+	
+	/**
+	 * Called at the start of every round, at the {@link Level#Rounds} level.
+	 *
+	 * @param round - the round that starts
+	 */
+	public void logRound(int round);
+	
+	/**
+	 * Called after a player performed its action, at the {@link Level#Actions} level.
+	 *
+	 * @param round - the current round
+	 * @param playerName - the name of the player, such as <code>P1</code>
+	 * @param agentName - the simple class name of the agent controlling the player
+	 * @param action - the action the agent chose
+	 * @param successful - whether the action could be performed
+	 */
+	public void logAction(int round, String playerName, String agentName, Action action, boolean successful);
+	
+	/**
+	 * Called when an agent did not decide within the turn timeout and forfeited its turn, at the {@link Level#Rounds} level.
+	 *
+	 * @param round - the current round
+	 * @param playerName - the name of the player, such as <code>P1</code>
+	 * @param agentName - the simple class name of the agent controlling the player
+	 * @param timeoutNanos - the turn timeout that was exceeded, in nanoseconds
+	 */
+	public void logTimeout(int round, String playerName, String agentName, long timeoutNanos);
+	
+	/**
+	 * Called when an agent threw an exception instead of deciding and forfeited its turn, at the {@link Level#Rounds} level.
+	 *
+	 * @param round - the current round
+	 * @param playerName - the name of the player, such as <code>P1</code>
+	 * @param agentName - the simple class name of the agent controlling the player
+	 * @param error - the exception the agent threw
+	 */
+	public void logError(int round, String playerName, String agentName, RuntimeException error);
+}
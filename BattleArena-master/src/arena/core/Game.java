@@ -1,10 +1,12 @@
 package arena.core;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import arena.agents.RandomAI;
-import javafx.scene.paint.Color;
 
 final class Game
 {
@@ -12,27 +14,43 @@ final class Game
 	private Player player1, player2;
 	private PlayerAI agent1, agent2;
 	private int round;
+	private long seed;
+	private SplittableRandom agent1Random, agent2Random;
 	private final Class<? extends PlayerAI> p1Class;
 	private final Class<? extends PlayerAI> p2Class;
+	private EventLog eventLog = EventLog.OFF;
+	private MetricsRegistry metricsRegistry;
+	private AgentMetrics agent1Metrics, agent2Metrics; // of the current match, null when no registry is set
+	private long turnTimeoutNanos; // 0 when agents decide on the thread of the game, as long as they want
+	private int timeouts; // turns forfeited in the current match
+	private AgentWatchdog agent1Watchdog, agent2Watchdog; // null when turns are not timed
+	private boolean agentIsolation;
+	private MapGenerator mapGenerator;
 	
 	public static final int ROUND_PER_STORM_ADVANCE = 20;
 	public static final double MAP_WALL_DENSITY = 0.3;
 	public static final double MAP_HEALTH_PACK_DENSITY = 0.02;
 	public static final int MAX_ROUNDS = 200;
+	public static final double PLAYER1_HUE = 240; // blue
+	public static final double PLAYER2_HUE = 0; // red
+	public static final String PLAYER1_NAME = "P1";
+	public static final String PLAYER2_NAME = "P2";
+	public static final long DEFAULT_TURN_TIMEOUT_MILLIS = 100; // the GUI's, well within a tick
 	
 	public Game(int mapWidth, int mapHeight, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
 	{
 		this.p1Class = p1Class;
 		this.p2Class = p2Class;
 		map = new Map(mapWidth, mapHeight);
+		mapGenerator = new MapGenerator(mapWidth, mapHeight);
 	}
 	
 	private final void createAgents()
 	{
-		//Creating AI from the specified classes
+		//Creating AI from the specified classes, each in its own class loader when isolated
 		try
 		{
-			agent1 = p1Class.getDeclaredConstructor().newInstance();
+			agent1 = (agentIsolation ? AgentClassLoader.isolate(p1Class) : p1Class).getDeclaredConstructor().newInstance();
 		}
 		catch (Exception e)
 		{
@@ -41,41 +59,54 @@ final class Game
 		
 		try
 		{
-			agent2 = p2Class.getDeclaredConstructor().newInstance();
+			agent2 = (agentIsolation ? AgentClassLoader.isolate(p2Class) : p2Class).getDeclaredConstructor().newInstance();
 		}
 		catch (Exception e)
 		{
 			agent2 = new RandomAI();
 		}
+		
+		// A watchdog that abandoned an agent of the previous match is still waiting for it
+		if(turnTimeoutNanos > 0 && (agent1Watchdog == null || agent1Watchdog.isAbandoned()))
+			agent1Watchdog = new AgentWatchdog(PLAYER1_NAME + "-" + agent1.getClass().getSimpleName());
+		if(turnTimeoutNanos > 0 && (agent2Watchdog == null || agent2Watchdog.isAbandoned()))
+			agent2Watchdog = new AgentWatchdog(PLAYER2_NAME + "-" + agent2.getClass().getSimpleName());
+		
+		if(metricsRegistry != null)
+		{
+			agent1Metrics = new AgentMetrics(agent1.getClass().getSimpleName());
+			agent2Metrics = new AgentMetrics(agent2.getClass().getSimpleName());
+		}
+		else
+		{
+			agent1Metrics = null;
+			agent2Metrics = null;
+		}
 	}
 	
 	public final void generateMap()
 	{
-		round = 0;
-		map.clear();
-		map.generateWalls(MAP_WALL_DENSITY);
-		map.generateHealthPacks(MAP_HEALTH_PACK_DENSITY);
-		createAgents();
-		generatePlayers();
-		
-		GameState gameState = new GameState(this, player1, player2);
-		GameUtility gameUtility = new GameUtility(gameState);
-		if(!gameUtility.isReachable(player1.getX(), player1.getY(), player2.getX(), player2.getY()))
-			generateMap();
+		generateMap(ThreadLocalRandom.current().nextLong());
 	}
 	
-	private final void generatePlayers()
+	public final void generateMap(long seed)
 	{
-		// add players
-		int x = (int) (Math.random() * map.getWidth());
-		int y = (int) (Math.random() * map.getHeight());
-		while(!map.canAddPlayer(x, y))
-		{
-			x = (int) (Math.random() * map.getWidth());
-			y = (int) (Math.random() * map.getHeight());	
-		}
-		player1 = map.addPlayer(x, y, "P1", agent1.getClass().getSimpleName(), Color.BLUE);
-		player2 = map.addPlayer(map.getWidth() - x - 1, y, "P2", agent2.getClass().getSimpleName(), Color.RED);
+		// Map generation and each agent draw from their own stream, so that one cannot shift the numbers seen by another
+		this.seed = seed;
+		SplittableRandom random = new SplittableRandom(seed);
+		random.split(); // the map's stream, see MapGenerator
+		agent1Random = random.split();
+		agent2Random = random.split();
+		
+		round = 0;
+		timeouts = 0;
+		createAgents();
+		
+		// The layout is drawn from a stream split the same way, so it only depends on the seed
+		MapLayout layout = mapGenerator.getLayout(seed);
+		layout.applyTerrain(map);
+		player1 = map.addPlayer(layout.getPlayer1X(), layout.getPlayer1Y(), PLAYER1_NAME, agent1.getClass().getSimpleName(), PLAYER1_HUE);
+		player2 = map.addPlayer(layout.getPlayer2X(), layout.getPlayer2Y(), PLAYER2_NAME, agent2.getClass().getSimpleName(), PLAYER2_HUE);
 	}
 	
 	public final boolean isGameOver()
@@ -89,18 +120,24 @@ final class Game
 			return;
 		
 		// Capture entities that were alive at this time
-		Set<Entity> entities = new HashSet<>(map.getEntities());
+		List<Entity> entities = new ArrayList<>(map.getEntities());
 		
 		round++;
-		System.out.println("Round " + round + " / " + MAX_ROUNDS);
+		if(eventLog.isEnabled(EventLog.Level.Rounds))
+			eventLog.logRound(round);
 		agent1.playRound(this, player1, player2);
 		agent2.playRound(this, player2, player1);
-		System.out.println();
 		map.tick(entities);
 		if(round % ROUND_PER_STORM_ADVANCE == 0)
 		{
 			map.advanceStorm();
 		}
+		
+		if(agent1Metrics != null && isGameOver())
+		{
+			metricsRegistry.add(agent1Metrics);
+			metricsRegistry.add(agent2Metrics);
+		}
 	}
 	
 	public final int getRoundsTillNextStormAdvance()
@@ -108,6 +145,111 @@ final class Game
 		return ROUND_PER_STORM_ADVANCE - (round % ROUND_PER_STORM_ADVANCE);
 	}
 
+	public final long getSeed()
+	{
+		return seed;
+	}
+	
+	final EventLog getEventLog()
+	{
+		return eventLog;
+	}
+	
+	final void setEventLog(EventLog eventLog)
+	{
+		this.eventLog = eventLog;
+	}
+	
+	/**
+	 * Sets the registry that receives the metrics of the agents at the end of each match, or null to stop measuring. Applies from the next
+	 * generated map.
+	 */
+	final void setMetricsRegistry(MetricsRegistry metricsRegistry)
+	{
+		this.metricsRegistry = metricsRegistry;
+	}
+	
+	/**
+	 * Sets how long an agent may take to decide its action before it forfeits the turn, or 0 to let agents take as long as they want.
+	 * Applies from the next generated map.
+	 */
+	final void setTurnTimeout(long timeout, TimeUnit unit)
+	{
+		turnTimeoutNanos = unit.toNanos(timeout);
+		if(turnTimeoutNanos <= 0)
+		{
+			agent1Watchdog = null;
+			agent2Watchdog = null;
+		}
+	}
+	
+	/**
+	 * Sets whether each agent is created from its own copy of its classes, so that static fields are never shared with the agents of
+	 * other matches, or with the other player of a mirror match. Applies from the next generated map.
+	 */
+	final void setAgentIsolation(boolean agentIsolation)
+	{
+		this.agentIsolation = agentIsolation;
+	}
+	
+	/**
+	 * Sets the generator the maps are taken from, typically one shared by several games so that they share its pool of layouts.
+	 */
+	final void setMapGenerator(MapGenerator mapGenerator)
+	{
+		if(mapGenerator.getWidth() != map.getWidth() || mapGenerator.getHeight() != map.getHeight())
+			throw new IllegalArgumentException("Generator of " + mapGenerator.getWidth() + "x" + mapGenerator.getHeight() + " maps for a map of " + map.getWidth() + "x" + map.getHeight());
+		
+		this.mapGenerator = mapGenerator;
+	}
+	
+	/**
+	 * Counts a turn that an agent forfeited because it did not decide in time.
+	 */
+	final void countTimeout()
+	{
+		timeouts++;
+	}
+	
+	/**
+	 * Returns the number of turns forfeited in the current match. Timeouts depend on how fast the machine runs the agents, so a match
+	 * that had some may not be reproduced by its seed.
+	 */
+	final int getTimeouts()
+	{
+		return timeouts;
+	}
+	
+	final long getTurnTimeoutNanos()
+	{
+		return turnTimeoutNanos;
+	}
+	
+	final AgentWatchdog getWatchdog(Player player)
+	{
+		return (player == player1) ? agent1Watchdog : agent2Watchdog;
+	}
+	
+	/**
+	 * Returns whether the agent of the specified player did not return from a decision in the current match, even when interrupted.
+	 * Its thread may still be running.
+	 */
+	final boolean isAgentAbandoned(Player player)
+	{
+		AgentWatchdog watchdog = getWatchdog(player);
+		return watchdog != null && watchdog.isAbandoned();
+	}
+	
+	final AgentMetrics getAgentMetrics(Player player)
+	{
+		return (player == player1) ? agent1Metrics : agent2Metrics;
+	}
+	
+	final SplittableRandom getRandom(Player player)
+	{
+		return (player == player1) ? agent1Random : agent2Random;
+	}
+
 	public final Map getMap()
 	{
 		return map;
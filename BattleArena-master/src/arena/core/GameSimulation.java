@@ -0,0 +1,201 @@
+package arena.core;
+
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a {@link Game} on a thread of its own, publishing a {@link ReplayFrame} after every round into a bounded queue that the GUI
+ * consumes at its own pace. The GUI thread never waits on an agent, and the simulation waits whenever the queue is full, so it never gets
+ * more than the capacity of the queue ahead of what is shown.
+ *
+ * <p>
+ * A frame only holds the cells that changed since the previous one, so the consumer must draw the cells of every frame, in order, on top
+ * of the map as it was when the simulation started.
+ * </p>
+ *
+ * <p>
+ * The game belongs to the simulation thread from {@link #start()} until {@link #stop()} returns or {@link #isDone()} is true; nothing
+ * else may touch it in between.
+ * </p>
+ *
+ * <p>
+ * After {@link #skipToEnd()}, the remaining rounds are played without capturing or logging anything, and only the frame of the last
+ * round is published, until {@link #stopSkipping()} is called. That frame also holds the cells of the skipped rounds and of the frames
+ * that were discarded.
+ * </p>
+ */
+final class GameSimulation
+{
+	static final int DEFAULT_CAPACITY = 64;
+	private static final long OFFER_TIMEOUT_MILLIS = 10; // how often a simulation waiting on a full queue checks whether it was stopped
+	
+	private final Game game;
+	private final Runnable afterTick;
+	private final ArrayBlockingQueue<ReplayFrame> frames;
+	private final Thread thread;
+	private volatile boolean stopped;
+	private volatile boolean skipping;
+	private volatile Throwable failure;
+	
+	/**
+	 * Creates the simulation of the specified game, which is played until it is over.
+	 *
+	 * @param afterTick - run on the simulation thread after every round, before its frame is published
+	 */
+	GameSimulation(Game game, Runnable afterTick, int capacity)
+	{
+		this.game = game;
+		this.afterTick = afterTick;
+		frames = new ArrayBlockingQueue<>(capacity);
+		thread = new Thread(this::simulate, "GameSimulation");
+		thread.setDaemon(true);
+	}
+	
+	final void start()
+	{
+		thread.start();
+	}
+	
+	/**
+	 * Returns the oldest frame that was not consumed yet, or null if the simulation has not published it yet.
+	 */
+	final ReplayFrame poll()
+	{
+		return frames.poll();
+	}
+	
+	/**
+	 * Returns whether the game is over and every frame was consumed.
+	 */
+	final boolean isDone()
+	{
+		return !thread.isAlive() && frames.isEmpty();
+	}
+	
+	/**
+	 * Returns the exception that ended the simulation before the game was over, or null.
+	 */
+	final Throwable getFailure()
+	{
+		return failure;
+	}
+	
+	/**
+	 * Plays the remaining rounds as fast as possible, and publishes only the frame of the last one. The frames that were not consumed
+	 * yet are discarded by the simulation thread, so a frame being published is discarded as well.
+	 */
+	final void skipToEnd()
+	{
+		skipping = true;
+	}
+	
+	/**
+	 * Publishes the frame of every round again, starting with the round being played.
+	 */
+	final void stopSkipping()
+	{
+		skipping = false;
+	}
+	
+	/**
+	 * Stops the simulation after the round being played, and waits for its thread to end. Frames that were not consumed are discarded.
+	 */
+	final void stop()
+	{
+		stopped = true;
+		
+		boolean interrupted = false;
+		while(thread.isAlive())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		
+		frames.clear();
+	}
+	
+	private final void simulate()
+	{
+		// Frames are captured from the cells the rounds changed
+		Map map = game.getMap();
+		int width = map.getWidth();
+		EventLog eventLog = game.getEventLog();
+		BitSet changedCells = map.trackChangedCells();
+		try
+		{
+			while(!stopped && !game.isGameOver())
+			{
+				// Skipped rounds are neither shown nor logged, so that nothing but the agents slows them down
+				boolean skipRound = skipping;
+				if(skipRound)
+					discardFrames(changedCells);
+				game.setEventLog(skipRound ? EventLog.OFF : eventLog);
+				
+				game.tick();
+				afterTick.run();
+				if(skipRound && !game.isGameOver())
+					continue;
+				
+				// The cells changed by skipped rounds are still marked, so they are encoded with the next frame
+				int[] cells = new int[changedCells.cardinality()];
+				byte[] codes = new byte[cells.length];
+				int index = 0;
+				for(int cell = changedCells.nextSetBit(0); cell >= 0; cell = changedCells.nextSetBit(cell + 1))
+				{
+					cells[index] = cell;
+					codes[index] = ReplayFormat.encodeCell(map.getEntity(cell % width, cell / width), game.getPlayer1());
+					index++;
+				}
+				changedCells.clear();
+				
+				publish(ReplayFrame.captureChanges(game, cells, codes));
+			}
+		}
+		catch(RuntimeException | Error e)
+		{
+			// The thread ends here, the GUI finds out once it consumed the frames published before
+			failure = e;
+		}
+		finally
+		{
+			game.setEventLog(eventLog);
+			map.untrackChangedCells(changedCells);
+		}
+	}
+	
+	// The cells of the discarded frames are marked again, so that they are drawn with the next frame that is published
+	private final void discardFrames(BitSet changedCells)
+	{
+		for(ReplayFrame frame = frames.poll(); frame != null; frame = frames.poll())
+		{
+			for(int index = 0; index < frame.getChangedCellCount(); index++)
+				changedCells.set(frame.getChangedCell(index));
+		}
+	}
+	
+	private final void publish(ReplayFrame frame)
+	{
+		while(!stopped)
+		{
+			try
+			{
+				if(frames.offer(frame, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+					return;
+			}
+			catch(InterruptedException e)
+			{
+				// Only stop() stops the simulation
+			}
+		}
+	}
+}
@@ -2,6 +2,7 @@ package arena.core;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import arena.core.GameState.EntityType;
 
@@ -140,8 +141,11 @@ public final class GameState
 	private final Player player;
 	private Player otherPlayer;
 	private final Map map;
-	private final EntityType[][] visualMap;
+	private final EntityType[][] visualMap; // shared copy-on-write with the map, never written to
+	private EntityType[][] visualMapCopy;
+	private final int terrainVersion;
 	private final Game game;
+	private volatile boolean expired; // the turn is over, see expire()
 	
 	GameState(Game game, Player player, Player otherPlayer)
 	{
@@ -150,46 +154,40 @@ public final class GameState
 		this.player = player;
 		this.otherPlayer = otherPlayer;
 		
-		visualMap = new EntityType[map.getWidth()][map.getHeight()];
-		constructVisualMap();
+		visualMap = map.shareTypeGrid();
+		terrainVersion = map.getTerrainVersion();
 	}
 	
-	private final void constructVisualMap()
+	/**
+	 * Makes every later read of the live game throw, once the turn this state was created for is over. An agent abandoned by its
+	 * {@link AgentWatchdog} may still be running, and must not read the map while the game changes it.
+	 */
+	final void expire()
 	{
-		for(int y = 0; y < map.getHeight(); y++)
-		{
-			for(int x = 0; x < map.getWidth(); x++)
-			{
-				visualMap[x][y] = getEntityType(x, y); 
-			}
-		}
+		expired = true;
 	}
 	
-	private final EntityType getEntityType(int x, int y)
+	private final void checkTurn()
 	{
-		Entity entity = map.getEntity(x, y);
-		if(entity == null)
-			return EntityType.Empty;
-		
-		if(entity instanceof Wall)
-			return EntityType.Wall;
-		
-		if(entity instanceof Player)
-			return EntityType.Player;
-		
-		if(entity instanceof Mine)
-			return EntityType.Mine;
-		
-		if(entity instanceof HealthPack)
-			return EntityType.HealthPack;
-		
-		if(entity instanceof Projectile)
-			return EntityType.Projectile;
-		
-		if(entity instanceof Storm)
-			return EntityType.Storm;
-		
-		return EntityType.Empty;
+		if(expired)
+			throw new IllegalStateException("The turn of this game state is over.");
+	}
+	
+	final Map getGameMap()
+	{
+		checkTurn();
+		return map;
+	}
+	
+	final int getTerrainVersion()
+	{
+		return terrainVersion;
+	}
+	
+	final SplittableRandom getRandom()
+	{
+		checkTurn();
+		return game.getRandom(player);
 	}
 	
 	/**
@@ -199,6 +197,7 @@ public final class GameState
 	 */
 	public final ProjectileData[] getProjectileDatas()
 	{
+		checkTurn();
 		List<ProjectileData> data = new ArrayList<>();
 		
 		for(Entity entity : map.getEntities())
@@ -227,6 +226,7 @@ public final class GameState
      */
     public final ProjectileData[] getSelfProjectileDatas()
     {
+        checkTurn();
         List<ProjectileData> data = new ArrayList<>();
         
         for(Entity entity : map.getEntities())
@@ -271,6 +271,7 @@ public final class GameState
      */
     public final ProjectileData getProjectileAtPosition(int x, int y) throws OutOfBoundsException
     {
+    	checkTurn();
     	if(visualMap[x][y].equals(EntityType.Projectile))
     	{
     		return new ProjectileData( (Projectile) map.getEntity(x, y));
@@ -302,6 +303,7 @@ public final class GameState
      */
     public final ProjectileData getProjectileAtPosition(Vector2 projectilePosition) throws OutOfBoundsException
     {
+    	checkTurn();
     	if(visualMap[projectilePosition.getX()][projectilePosition.getY()].equals(EntityType.Projectile))
     	{
     		return new ProjectileData( (Projectile) map.getEntity(projectilePosition.getX(), projectilePosition.getY()));
@@ -383,11 +385,22 @@ public final class GameState
 	 * EntityType entity = map[3][4];
 	 * </pre>
 	 * 
+	 * <p>
+	 * The array is created the first time this method is called and belongs to the caller; modifying it does not affect the game.
+	 * Prefer {@link #getEntityAt(int, int)} when only a few positions are needed.
+	 * </p>
+	 * 
 	 * @return a 2D map of the entities
 	 */
 	public final EntityType[][] getMap()
 	{
-		return visualMap;
+		if(visualMapCopy == null)
+		{
+			visualMapCopy = new EntityType[visualMap.length][];
+			for(int x = 0; x < visualMap.length; x++)
+				visualMapCopy[x] = visualMap[x].clone();
+		}
+		return visualMapCopy;
 	}
 	
 	/**
@@ -397,6 +410,7 @@ public final class GameState
 	 */
 	public final int getOpponentHealth()
 	{
+		checkTurn();
 		if(otherPlayer != null)
 			return otherPlayer.getHealth();
 		return -1;
@@ -409,6 +423,7 @@ public final class GameState
 	 */
 	public final int getOpponentX()
 	{
+		checkTurn();
 		if(otherPlayer != null)
 			return otherPlayer.getX();
 		return -1;
@@ -421,6 +436,7 @@ public final class GameState
 	 */
 	public final int getOpponentY()
 	{
+		checkTurn();
 		if(otherPlayer != null)
 			return otherPlayer.getY();
 		return -1;
@@ -433,6 +449,7 @@ public final class GameState
 	 */
 	public final int getPlayerHealth()
 	{
+		checkTurn();
 		return player.getHealth();
 	}
 	
@@ -453,6 +470,7 @@ public final class GameState
 	 */
 	public final int getPlayerX()
 	{
+		checkTurn();
 		return player.getX();
 	}
 	
@@ -463,6 +481,7 @@ public final class GameState
 	 */
 	public final int getPlayerY()
 	{
+		checkTurn();
 		return player.getY();
 	}
 	
@@ -482,6 +501,7 @@ public final class GameState
 	 */
 	public final boolean isEmpty(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -504,6 +524,7 @@ public final class GameState
 	 */
 	public final boolean isWall(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -526,6 +547,7 @@ public final class GameState
 	 */
 	public final boolean isStorm(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -551,6 +573,7 @@ public final class GameState
 	 */
 	public final boolean isProjectile(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -576,6 +599,7 @@ public final class GameState
 	 */
 	public final boolean isHostileProjectile(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -605,6 +629,7 @@ public final class GameState
 	 */
 	public final boolean isFriendlyProjectile(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -631,6 +656,7 @@ public final class GameState
 	 */
 	public final boolean isMine(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -653,6 +679,7 @@ public final class GameState
 	 */
 	public final boolean isHealthPack(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -678,6 +705,7 @@ public final class GameState
 	 */
 	public final boolean isPlayer(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -703,6 +731,7 @@ public final class GameState
 	 */
 	public final boolean isHostilePlayer(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -732,6 +761,7 @@ public final class GameState
 	 */
 	public final boolean isFriendlyPlayer(int x, int y) throws OutOfBoundsException
 	{
+		checkTurn();
 		if(isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -749,6 +779,7 @@ public final class GameState
 	 */
 	public final int getStormSize()
 	{
+		checkTurn();
 		return map.getStormSize();
 	}
 	
@@ -771,6 +802,7 @@ public final class GameState
 	 */
 	public final int getRoundsTillNextStormAdvance()
 	{
+		checkTurn();
 		return game.getRoundsTillNextStormAdvance();
 	}
 	
@@ -781,9 +813,21 @@ public final class GameState
 	 */
 	public final int getRound()
 	{
+		checkTurn();
 		return game.getRound();
 	}
 	
+	/**
+	 * Returns the seed the match was generated from. Replaying the same agents with the same seed reproduces the same map and random numbers.
+	 * 
+	 * @return the seed of the match
+	 */
+	public final long getSeed()
+	{
+		checkTurn();
+		return game.getSeed();
+	}
+	
 	/**
 	 * Returns the maximum round before the game ends as a tie.
 	 * 
@@ -802,6 +846,7 @@ public final class GameState
 	 */
 	public final boolean canShoot()
 	{
+		checkTurn();
 		return player.canShoot();
 	}
 	
@@ -813,6 +858,7 @@ public final class GameState
 	 */
 	public final int getCurrentShootCooldown()
 	{
+		checkTurn();
 		return player.getShootCooldown();
 	}
 	
@@ -824,6 +870,7 @@ public final class GameState
 	 */
 	public final boolean canPlaceMine()
 	{
+		checkTurn();
 		return player.canPlaceMine();
 	}
 	
@@ -835,6 +882,7 @@ public final class GameState
 	 */
 	public final int getCurrentMineCooldown()
 	{
+		checkTurn();
 		return player.getPlaceMineCooldown();
 	}
 }
\ No newline at end of file
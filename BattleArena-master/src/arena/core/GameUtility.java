@@ -11,13 +11,26 @@ import arena.core.GameState.EntityType;
 public final class GameUtility
 {
 	private final GameState gameState;
-	private final Node[][] nodes;
+	private final AgentMetrics metrics;
 	
 	GameUtility(GameState gameState)
+	{
+		this(gameState, null);
+	}
+	
+	/**
+	 * Creates the utility of a turn, counting its calls into the specified metrics unless null.
+	 */
+	GameUtility(GameState gameState, AgentMetrics metrics)
 	{
 		this.gameState = gameState;
-		nodes = new Node[gameState.getMapWidth()][gameState.getMapHeight()];
-		constructPathfindingNodes();
+		this.metrics = metrics;
+	}
+	
+	private final void count(AgentMetrics.UtilityMethod method)
+	{
+		if(metrics != null)
+			metrics.countUtilityCall(method);
 	}
 	
 	/**
@@ -36,6 +49,8 @@ public final class GameUtility
 	 */
 	public final boolean isWalkable(int x, int y) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.IsWalkable);
+		
 		if(gameState.isOutOfBounds(x, y))
 			return false;
 		
@@ -63,6 +78,8 @@ public final class GameUtility
 	 */
 	public final boolean isWalkable(Vector2 pos) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.IsWalkable);
+		
 		int x = pos.getX();
 		int y = pos.getY();
 		if(gameState.isOutOfBounds(x, y))
@@ -85,14 +102,22 @@ public final class GameUtility
 	
 	
 	
-	private final void constructPathfindingNodes()
+	private final Vector2[] findPath(int startX, int startY, int destinationX, int destinationY)
 	{
-		for(int y = 0; y < gameState.getMapHeight(); y++)
+		PathfindingGrid grid = gameState.getGameMap().getPathfindingGrid();
+		synchronized(grid)
 		{
-			for(int x = 0; x < gameState.getMapWidth(); x++)
+			grid.update(gameState);
+			int width = grid.getWidth();
+			int length = grid.findPath(startY * width + startX, destinationY * width + destinationX);
+			Vector2[] path = new Vector2[length];
+			for(int i = 0; i < length; i++)
 			{
-				nodes[x][y] = new Node(x, y, isWalkable(x, y));
+				int cell = grid.getPathCell(i);
+				path[i] = new Vector2(cell % width, cell / width);
 			}
+			
+			return path;
 		}
 	}
 	
@@ -102,7 +127,7 @@ public final class GameUtility
 	 * 
 	 * <p>
 	 * Calculates the shortest path from <code>(startX, startY)</code> to <code>(destinationX, destinationY)</code> using the A* path-finding algorithm.
-	 * If no path is possible, returns an empty array.
+	 * If no path is possible, returns an empty array. When paths from the same start tile are asked for again in a round, a breadth-first search from the tile is cached, so they only cost the length of the path.
 	 * </p>
 	 * 
 	 * <p>
@@ -120,23 +145,15 @@ public final class GameUtility
 	 */
 	public final Vector2[] calculatePath(int startX, int startY, int destinationX, int destinationY) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.CalculatePath);
+		
 		if(gameState.isOutOfBounds(startX, startY))
 			throw new OutOfBoundsException(startX, startY);
 		
 		if(gameState.isOutOfBounds(destinationX, destinationY))
 			throw new OutOfBoundsException(destinationX, destinationY);
 		
-		Node startNode = nodes[startX][startY];
-		Node destinationNode = nodes[destinationX][destinationY];
-		Node[] pathNodes = AStar.calculatePath(nodes, startNode, destinationNode);
-		Vector2[] path = new Vector2[pathNodes.length];
-		for(int i = 0; i < path.length; i++)
-		{
-			Node node = pathNodes[i];
-			path[i] = new Vector2(node.getX(), node.getY()); 
-		}
-		
-		return path;
+		return findPath(startX, startY, destinationX, destinationY);
 	}
 	
 	
@@ -149,7 +166,7 @@ public final class GameUtility
 	 * 
 	 * <p>
 	 * Calculates the shortest path from <code>(startX, startY)</code> to <code>(destinationX, destinationY)</code> using the A* path-finding algorithm.
-	 * If no path is possible, returns an empty array.
+	 * If no path is possible, returns an empty array. When paths from the same start tile are asked for again in a round, a breadth-first search from the tile is cached, so they only cost the length of the path.
 	 * </p>
 	 * 
 	 * <p>
@@ -165,6 +182,8 @@ public final class GameUtility
 	 */
 	public final Vector2[] calculatePath(Vector2 start, Vector2 destination) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.CalculatePath);
+		
 		int startX = start.getX();
 		int startY = start.getY();
 		int destinationX = destination.getX();
@@ -175,17 +194,7 @@ public final class GameUtility
 		if(gameState.isOutOfBounds(destinationX, destinationY))
 			throw new OutOfBoundsException(destinationX, destinationY);
 		
-		Node startNode = nodes[startX][startY];
-		Node destinationNode = nodes[destinationX][destinationY];
-		Node[] pathNodes = AStar.calculatePath(nodes, startNode, destinationNode);
-		Vector2[] path = new Vector2[pathNodes.length];
-		for(int i = 0; i < path.length; i++)
-		{
-			Node node = pathNodes[i];
-			path[i] = new Vector2(node.getX(), node.getY()); 
-		}
-		
-		return path;
+		return findPath(startX, startY, destinationX, destinationY);
 	}
 	
 	
@@ -210,13 +219,21 @@ public final class GameUtility
 	 */
 	public final boolean isReachable(int startX, int startY, int destinationX, int destinationY) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.IsReachable);
+		
 		if(gameState.isOutOfBounds(startX, startY))
 			throw new OutOfBoundsException(startX, startY);
 		
 		if(gameState.isOutOfBounds(destinationX, destinationY))
 			throw new OutOfBoundsException(destinationX, destinationY);
 		
-		return calculatePath(startX, startY, destinationX, destinationY).length > 0;
+		PathfindingGrid grid = gameState.getGameMap().getPathfindingGrid();
+		synchronized(grid)
+		{
+			grid.update(gameState);
+			int width = grid.getWidth();
+			return grid.findPath(startY * width + startX, destinationY * width + destinationX) > 0;
+		}
 	}
 	
 	/**
@@ -254,6 +271,8 @@ public final class GameUtility
 	 */
 	public final boolean haveLineOfSight(int startX, int startY, int destinationX, int destinationY) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.HaveLineOfSight);
+		
 		if(gameState.isOutOfBounds(startX, startY))
 			throw new OutOfBoundsException(startX, startY);
 		
@@ -297,7 +316,7 @@ public final class GameUtility
 	 * Returns an action that moves the player to the specified location; if there is no path, it will return {@link Action#NoAction}.
 	 * 
 	 * <p>
-	 * This uses A* pathfinding to calculate the shortest path from {@link #calculatePath(int, int, int, int)}.
+	 * This follows the shortest path from {@link #calculatePath(int, int, int, int)}.
 	 * </p>
 	 * 
 	 * <p>
@@ -313,33 +332,37 @@ public final class GameUtility
 	 */
 	public final Action moveTowards(int destinationX, int destinationY) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.MoveTowards);
+		
 		if(gameState.isOutOfBounds(destinationX, destinationY))
 			throw new OutOfBoundsException(destinationX, destinationY);
 		
 		int startX = gameState.getPlayerX();
 		int startY = gameState.getPlayerY();
-		Vector2[] path = calculatePath(startX, startY, destinationX, destinationY);
-		
-		if(path.length > 0) // A path exists
+		int targetX;
+		int targetY;
+		PathfindingGrid grid = gameState.getGameMap().getPathfindingGrid();
+		synchronized(grid)
 		{
-			int targetX = path[0].getX();
-			int targetY = path[0].getY();
-			
-			if(targetX > startX)
-				return Action.MoveRight;
-			else if(targetX < startX)
-				return Action.MoveLeft;
-			else if(targetY > startY)
-				return Action.MoveDown;
-			else if(targetY < startY)
-				return Action.MoveUp;
-			else
+			grid.update(gameState);
+			int width = grid.getWidth();
+			if(grid.findPath(startY * width + startX, destinationY * width + destinationX) == 0) // Unreachable
 				return Action.NoAction;
+			
+			targetX = grid.getPathCell(0) % width;
+			targetY = grid.getPathCell(0) / width;
 		}
-		else // Unreachable
-		{
+		
+		if(targetX > startX)
+			return Action.MoveRight;
+		else if(targetX < startX)
+			return Action.MoveLeft;
+		else if(targetY > startY)
+			return Action.MoveDown;
+		else if(targetY < startY)
+			return Action.MoveUp;
+		else
 			return Action.NoAction;
-		}
 	}
 	
 	/**
@@ -362,6 +385,8 @@ public final class GameUtility
 	 */
 	public final Action shootTowards(int destinationX, int destinationY) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.ShootTowards);
+		
 		if(gameState.isOutOfBounds(destinationX, destinationY))
 			throw new OutOfBoundsException(destinationX, destinationY);
 		
@@ -400,6 +425,8 @@ public final class GameUtility
 	 */
 	public final Action placeMineTowards(int destinationX, int destinationY) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.PlaceMineTowards);
+		
 		if(gameState.isOutOfBounds(destinationX, destinationY))
 			throw new OutOfBoundsException(destinationX, destinationY);
 
@@ -444,6 +471,8 @@ public final class GameUtility
 	 */
 	public final int manhattanDistance(int startX, int startY, int destinationX, int destinationY)
 	{
+		count(AgentMetrics.UtilityMethod.ManhattanDistance);
+		
 		int dx = startX - destinationX;
 		int dy = startY - destinationY; 
 		return Math.abs(dx) + Math.abs(dy);
@@ -472,6 +501,8 @@ public final class GameUtility
 	 */
 	public final double euclidianDistance(int startX, int startY, int destinationX, int destinationY)
 	{
+		count(AgentMetrics.UtilityMethod.EuclidianDistance);
+		
 		int dx = startX - destinationX;
 		int dy = startY - destinationY; 
 		return Math.sqrt(dx*dx + dy*dy);
@@ -508,6 +539,8 @@ public final class GameUtility
 	 */
 	public final Vector2 findNearest(int x, int y, EntityType criterion) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.FindNearest);
+		
 		if(gameState.isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -521,7 +554,7 @@ public final class GameUtility
 				EntityType entityType = gameState.getEntityAt(xx, yy);
 				if(entityType != criterion)
 					continue;
-				int calculatedDistance = manhattanDistance(x, y, xx, yy);
+				int calculatedDistance = Math.abs(x - xx) + Math.abs(y - yy);
 				if(calculatedDistance < distance)
 				{
 					closest.setX(xx);
@@ -565,6 +598,8 @@ public final class GameUtility
 	 */
 	public final Vector2 findFurthest(int x, int y, EntityType criterion) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.FindFurthest);
+		
 		if(gameState.isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
@@ -578,7 +613,7 @@ public final class GameUtility
 				EntityType entityType = gameState.getEntityAt(xx, yy);
 				if(entityType != criterion)
 					continue;
-				int calculatedDistance = manhattanDistance(x, y, xx, yy);
+				int calculatedDistance = Math.abs(x - xx) + Math.abs(y - yy);
 				if(calculatedDistance > distance)
 				{
 					furthest.setX(xx);
@@ -613,13 +648,12 @@ public final class GameUtility
 	 */
 	public final boolean isWithinStorm(int x, int y, int stormSize) throws OutOfBoundsException
 	{
+		count(AgentMetrics.UtilityMethod.IsWithinStorm);
+		
 		if(gameState.isOutOfBounds(x, y))
 			throw new OutOfBoundsException(x, y);
 		
-		double minX = Math.min(x + 1, Math.abs(x - gameState.getMapWidth()));
-		double minY = Math.min(y + 1, Math.abs(y - gameState.getMapHeight()));
-		double distance = Math.min(minX, minY);
-		return distance <= stormSize;
+		return Map.getEdgeDistance(x, y, gameState.getMapWidth(), gameState.getMapHeight()) <= stormSize;
 	}
 	
 	/**
@@ -638,10 +672,47 @@ public final class GameUtility
 	 */
 	public final Action chooseRandomly(Action... actions)
 	{
+		count(AgentMetrics.UtilityMethod.ChooseRandomly);
+		
 		if(actions == null || actions.length == 0)
 			return Action.NoAction;
 		
-		int index = (int) (actions.length * Math.random());
+		int index = gameState.getRandom().nextInt(actions.length);
 		return actions[index];
 	}
+	
+	/**
+	 * Returns a random integer from 0 (inclusive) to <code>bound</code> (exclusive).
+	 * 
+	 * <p>
+	 * The numbers come from a generator owned by the match and seeded from {@link GameState#getSeed()}, so an agent that only uses this
+	 * method (and {@link #randomDouble()}) for its random choices behaves the same way every time the match is replayed with the same seed.
+	 * </p>
+	 * 
+	 * @param bound - the upper bound (exclusive), must be positive
+	 * 
+	 * @throws IllegalArgumentException when the bound is not positive
+	 * 
+	 * @return a random integer between 0 and <code>bound-1</code>
+	 */
+	public final int randomInt(int bound)
+	{
+		count(AgentMetrics.UtilityMethod.RandomInt);
+		
+		return gameState.getRandom().nextInt(bound);
+	}
+	
+	/**
+	 * Returns a random number from 0.0 (inclusive) to 1.0 (exclusive). This is the seeded replacement for <code>Math.random()</code>.
+	 * 
+	 * @see #randomInt(int)
+	 * 
+	 * @return a random number between 0.0 and 1.0
+	 */
+	public final double randomDouble()
+	{
+		count(AgentMetrics.UtilityMethod.RandomDouble);
+		
+		return gameState.getRandom().nextDouble();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,394 @@
+package arena.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <code>HeadlessMatch</code> class plays a full match between two AI agents without the JavaFX toolkit.
+ * The rounds are simulated back to back at full speed instead of once every quarter of a second like the GUI,
+ * which makes it suitable for bulk evaluation of agents on machines without a display.
+ *
+ * <p>
+ * To play a single match with SimpleAI vs RandomAI, simply call:
+ * </p>
+ * <pre>
+ * HeadlessMatch.Result result = new HeadlessMatch(SimpleAI.class, RandomAI.class).play();
+ * System.out.println(result.getOutcome());
+ * </pre>
+ *
+ * @author ERAU AI Club
+ */
+public final class HeadlessMatch
+{
+	/**
+	 * The <code>Outcome</code> enum represents how a match ended.
+	 *
+	 * @author ERAU AI Club
+	 */
+	public enum Outcome
+	{
+		/** The 1st player is the only one alive at the end of the match. */
+		Player1Win,
+		
+		/** The 2nd player is the only one alive at the end of the match. */
+		Player2Win,
+		
+		/** Both players died in the same round, or both survived until {@link GameState#getMaxRound()}. */
+		Draw
+	}
+	
+	/**
+	 * The <code>Result</code> class represents the final state of a finished match.
+	 *
+	 * @author ERAU AI Club
+	 */
+	public static final class Result
+	{
+		private final long seed;
+		private final Outcome outcome;
+		private final int rounds;
+		private final int player1Health;
+		private final int player2Health;
+		private final int timeouts;
+		
+		Result(long seed, Outcome outcome, int rounds, int player1Health, int player2Health, int timeouts)
+		{
+			this.seed = seed;
+			this.outcome = outcome;
+			this.rounds = rounds;
+			this.player1Health = player1Health;
+			this.player2Health = player2Health;
+			this.timeouts = timeouts;
+		}
+		
+		/**
+		 * Returns the seed the match was played with. Playing the same agents again with this seed reproduces the match, as long as no
+		 * turn was forfeited to the turn timeout (see {@link #getTimeouts()}).
+		 * 
+		 * @return the seed of the match
+		 */
+		public final long getSeed()
+		{
+			return seed;
+		}
+		
+		/**
+		 * Returns how the match ended. See {@link Outcome} for all possible values.
+		 *
+		 * @return the outcome of the match
+		 */
+		public final Outcome getOutcome()
+		{
+			return outcome;
+		}
+		
+		/**
+		 * Returns the number of rounds that were played.
+		 *
+		 * @return the number of rounds played
+		 */
+		public final int getRounds()
+		{
+			return rounds;
+		}
+		
+		/**
+		 * Returns the 1st player's health at the end of the match.
+		 *
+		 * @return the 1st player's health
+		 */
+		public final int getPlayer1Health()
+		{
+			return player1Health;
+		}
+		
+		/**
+		 * Returns the 2nd player's health at the end of the match.
+		 *
+		 * @return the 2nd player's health
+		 */
+		public final int getPlayer2Health()
+		{
+			return player2Health;
+		}
+		
+		/**
+		 * Returns the number of turns the agents forfeited because they did not decide within the turn timeout. Timeouts depend on how fast
+		 * the machine ran the agents, so when this is not 0, playing the seed again may end differently.
+		 *
+		 * @return the number of forfeited turns of both players
+		 */
+		public final int getTimeouts()
+		{
+			return timeouts;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "Result [seed=" + seed + ", outcome=" + outcome + ", rounds=" + rounds + ", player1Health=" + player1Health + ", player2Health=" + player2Health
+				   + ", timeouts=" + timeouts + "]";
+		}
+	}
+	
+	private final Game game;
+	
+	/**
+	 * Creates a match with the default map size (20x20).
+	 *
+	 * @param p1Class - the 1st player's class
+	 * @param p2Class - the 2nd player's class
+	 */
+	public HeadlessMatch(Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
+	{
+		this(20, 20, p1Class, p2Class);
+	}
+	
+	/**
+	 * Creates a match with the specified map size.
+	 *
+	 * @param mapWidth - the width of the map (8 is minimum)
+	 * @param mapHeight - the height of the map (8 is minimum)
+	 * @param p1Class - the 1st player's class
+	 * @param p2Class - the 2nd player's class
+	 *
+	 * @throws IllegalArgumentException when the map size is too small or either class is null
+	 */
+	public HeadlessMatch(int mapWidth, int mapHeight, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class)
+	{
+		if(mapWidth < 8)
+			throw new IllegalArgumentException("Width not in range [8..inf]: " + mapWidth);
+		
+		if(mapHeight < 8)
+			throw new IllegalArgumentException("Height not in range [8..inf]: " + mapHeight);
+		
+		if(p1Class == null || p2Class == null)
+			throw new IllegalArgumentException("Player classes cannot be null.");
+		
+		game = new Game(mapWidth, mapHeight, p1Class, p2Class);
+		game.setTurnTimeout(Game.DEFAULT_TURN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Sends the events of the following matches to the specified log. By default, nothing is logged.
+	 *
+	 * @param eventLog - the log receiving the events, or null to stop logging
+	 */
+	public final void setEventLog(EventLog eventLog)
+	{
+		game.setEventLog((eventLog != null) ? eventLog : EventLog.OFF);
+	}
+	
+	/**
+	 * Sets how long an agent may take to decide its action before it forfeits the turn and performs {@link Action#NoAction} instead.
+	 * Each decision then runs on a thread of the agent, so an agent stuck in a loop cannot stall the match.
+	 * By default the timeout is {@link Game#DEFAULT_TURN_TIMEOUT_MILLIS}. Whether a turn is forfeited then depends on the load of the
+	 * machine, see {@link Result#getTimeouts()}; without a timeout, a match only depends on its seed and agents, but an agent that never
+	 * decides stalls it for good. An agent that does not return even when interrupted forfeits the rest of the match, and its thread is
+	 * left running; once too many such threads are alive, playing a match throws an {@link IllegalStateException}.
+	 *
+	 * @param timeoutMillis - the time budget of a turn in milliseconds, or 0 to let agents take as long as they want on the calling thread
+	 */
+	public final void setTurnTimeout(long timeoutMillis)
+	{
+		game.setTurnTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Sets whether each agent is created from a fresh copy of its classes, loaded by a class loader of its own. An isolated agent shares
+	 * no static field with any other agent, even of the same class: use it for mirror matches and for matches played in parallel by
+	 * agents that keep state in static fields. The copies start without any JIT compilation, so isolated agents are slower to warm up.
+	 * By default, agents are not isolated.
+	 *
+	 * @param agentIsolation - true to isolate the agents of the following matches
+	 */
+	public final void setAgentIsolation(boolean agentIsolation)
+	{
+		game.setAgentIsolation(agentIsolation);
+	}
+	
+	/**
+	 * Measures the turns of both agents in the following matches, and adds the metrics to the specified registry at the end of each match.
+	 * By default, nothing is measured.
+	 *
+	 * @param metricsRegistry - the registry receiving the metrics, or null to stop measuring
+	 */
+	public final void setMetricsRegistry(MetricsRegistry metricsRegistry)
+	{
+		game.setMetricsRegistry(metricsRegistry);
+	}
+	
+	final void setMapGenerator(MapGenerator mapGenerator)
+	{
+		game.setMapGenerator(mapGenerator);
+	}
+	
+	/**
+	 * Returns whether the 1st player's agent was abandoned in the last match, see {@link #setTurnTimeout(long)}.
+	 */
+	final boolean isPlayer1Abandoned()
+	{
+		return game.isAgentAbandoned(game.getPlayer1());
+	}
+	
+	/**
+	 * Returns whether the 2nd player's agent was abandoned in the last match, see {@link #setTurnTimeout(long)}.
+	 */
+	final boolean isPlayer2Abandoned()
+	{
+		return game.isAgentAbandoned(game.getPlayer2());
+	}
+	
+	/**
+	 * Generates a new map from a random seed and plays every round until the match is over.
+	 * Calling this method again plays a brand new match on a freshly generated map.
+	 *
+	 * @return the result of the match
+	 */
+	public final Result play()
+	{
+		game.generateMap();
+		return playGeneratedMap();
+	}
+	
+	/**
+	 * Generates the map of the specified seed and plays every round until the match is over.
+	 * The same seed and agent classes always produce the same match, as long as the agents take their random numbers from {@link GameUtility}.
+	 *
+	 * @param seed - the seed of the match
+	 *
+	 * @return the result of the match
+	 */
+	public final Result play(long seed)
+	{
+		game.generateMap(seed);
+		return playGeneratedMap();
+	}
+	
+	/**
+	 * Same as {@link #play(long)}, but also records the match into the specified replay file. The file is created, or overwritten if it exists.
+	 *
+	 * @param seed - the seed of the match
+	 * @param replayFile - the file to record the match into
+	 *
+	 * @throws IOException when the replay file cannot be written
+	 *
+	 * @return the result of the match
+	 */
+	public final Result play(long seed, Path replayFile) throws IOException
+	{
+		try(ReplayWriter replayWriter = new ReplayWriter(replayFile))
+		{
+			return play(seed, replayWriter);
+		}
+	}
+	
+	/**
+	 * Same as {@link #play(long)}, but also records the match with the specified writer, which is left open.
+	 */
+	final Result play(long seed, ReplayWriter replayWriter) throws IOException
+	{
+		game.generateMap(seed);
+		replayWriter.writeHeader(game);
+		while(!game.isGameOver())
+		{
+			game.tick();
+			replayWriter.writeRound(game);
+		}
+		
+		replayWriter.writeEnd(game);
+		return createResult();
+	}
+	
+	private final Result playGeneratedMap()
+	{
+		while(!game.isGameOver())
+		{
+			game.tick();
+		}
+		
+		return createResult();
+	}
+	
+	private final Result createResult()
+	{
+		Player player1 = game.getPlayer1();
+		Player player2 = game.getPlayer2();
+		return new Result(game.getSeed(), getOutcome(game), game.getRound(), player1.getHealth(), player2.getHealth(), game.getTimeouts());
+	}
+	
+	static final Outcome getOutcome(Game game)
+	{
+		boolean player1Dead = game.getPlayer1().isDead();
+		boolean player2Dead = game.getPlayer2().isDead();
+		
+		if(player1Dead == player2Dead)
+			return Outcome.Draw;
+		else if(player2Dead)
+			return Outcome.Player1Win;
+		else
+			return Outcome.Player2Win;
+	}
+	
+	/**
+	 * Plays matches from the command line, in the format of:
+	 *
+	 * <pre>
+	 * java arena.core.HeadlessMatch arena.agents.SimpleAI arena.agents.RandomAI [matches] [seed]
+	 * </pre>
+	 *
+	 * <p>
+	 * When a seed is given, the i-th match is played with <code>seed + i</code>. Setting the <code>arena.log</code> system property to
+	 * an {@link EventLog.Level} prints the events of every match, setting the <code>arena.metrics</code> system property to
+	 * <code>true</code> prints the {@link AgentMetrics} of both agents at the end, and setting the <code>arena.turnTimeout</code> system
+	 * property to a number of milliseconds sets the turn timeout, 0 turning it off.
+	 * </p>
+	 *
+	 * @param args - the fully qualified class names of both players, optionally followed by the number of matches and the first seed
+	 *
+	 * @throws ClassNotFoundException when either class cannot be found
+	 */
+	public static void main(String[] args) throws ClassNotFoundException
+	{
+		if(args.length < 2)
+		{
+			System.err.println("Usage: HeadlessMatch <p1Class> <p2Class> [matches] [seed]");
+			return;
+		}
+		
+		Class<? extends PlayerAI> p1Class = Class.forName(args[0]).asSubclass(PlayerAI.class);
+		Class<? extends PlayerAI> p2Class = Class.forName(args[1]).asSubclass(PlayerAI.class);
+		int matches = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+		Long seed = (args.length > 3) ? Long.valueOf(args[3]) : null;
+		
+		HeadlessMatch match = new HeadlessMatch(p1Class, p2Class);
+		EventLog.Level logLevel = EventLog.Level.valueOf(System.getProperty("arena.log", EventLog.Level.Off.name()));
+		MetricsRegistry metrics = Boolean.getBoolean("arena.metrics") ? new MetricsRegistry() : null;
+		match.setMetricsRegistry(metrics);
+		match.setTurnTimeout(Long.getLong("arena.turnTimeout", Game.DEFAULT_TURN_TIMEOUT_MILLIS));
+		int[] outcomes = new int[Outcome.values().length];
+		long startTime = System.nanoTime();
+		try(AsyncEventLog eventLog = new AsyncEventLog(System.out, logLevel))
+		{
+			match.setEventLog(eventLog);
+			for(int i = 0; i < matches; i++)
+			{
+				Result result = (seed != null) ? match.play(seed + i) : match.play();
+				outcomes[result.getOutcome().ordinal()]++;
+			}
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		
+		System.out.println(p1Class.getSimpleName() + " wins: " + outcomes[Outcome.Player1Win.ordinal()]);
+		System.out.println(p2Class.getSimpleName() + " wins: " + outcomes[Outcome.Player2Win.ordinal()]);
+		System.out.println("Draws: " + outcomes[Outcome.Draw.ordinal()]);
+		System.out.println("Played " + matches + " matches in " + String.format("%.2f", seconds) + " seconds");
+		
+		if(metrics != null)
+		{
+			System.out.println();
+			metrics.print(System.out);
+		}
+	}
+}
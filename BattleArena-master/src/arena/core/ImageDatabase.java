@@ -1,6 +1,16 @@
 package arena.core;
 
+import java.util.HashMap;
+
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
 
 final class ImageDatabase
 {
@@ -19,4 +29,104 @@ final class ImageDatabase
 	public final Image play = new Image("/res/Play.png");
 	public final Image pause = new Image("/res/Pause.png");
 	public final Image replay = new Image("/res/Replay.png");
-}
\ No newline at end of file
+	
+	// Tinted sprites by hue: the player facing right, the player facing left and the projectile
+	private static final int PLAYER = 0;
+	private static final int PLAYER_MIRRORED = 1;
+	private static final int PROJECTILE = 2;
+	private final HashMap<Double, Image[]> tintedSprites = new HashMap<>();
+	
+	/**
+	 * Returns the player sprite tinted with the specified hue, facing left or right. Tinted sprites are rendered the first time they are
+	 * asked for and then reused, so showing a player never runs an effect.
+	 */
+	final Image getPlayer(double hue, boolean facingLeft)
+	{
+		return getTintedSprites(hue)[facingLeft ? PLAYER_MIRRORED : PLAYER];
+	}
+	
+	/**
+	 * Returns the projectile sprite tinted with the specified hue.
+	 */
+	final Image getProjectile(double hue)
+	{
+		return getTintedSprites(hue)[PROJECTILE];
+	}
+	
+	private final Image[] getTintedSprites(double hue)
+	{
+		Image[] sprites = tintedSprites.get(hue);
+		if(sprites == null)
+		{
+			sprites = new Image[3];
+			sprites[PLAYER] = tint(player, hue, false);
+			sprites[PLAYER_MIRRORED] = tint(player, hue, true);
+			sprites[PROJECTILE] = tint(projectile, hue, false);
+			tintedSprites.put(hue, sprites);
+		}
+		
+		return sprites;
+	}
+	
+	/**
+	 * Returns a copy of the image with the hue of every pixel rotated by the specified number of degrees, mirrored horizontally if asked.
+	 */
+	private static final Image tint(Image image, double hue, boolean mirrored)
+	{
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		PixelReader reader = image.getPixelReader();
+		WritableImage tinted = new WritableImage(width, height);
+		PixelWriter writer = tinted.getPixelWriter();
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width; x++)
+			{
+				int targetX = mirrored ? width - 1 - x : x;
+				Color color = reader.getColor(x, y);
+				if(color.getOpacity() == 0)
+					writer.setArgb(targetX, y, 0);
+				else
+					writer.setColor(targetX, y, color.deriveColor(hue, 1, 1, 1));
+			}
+		}
+		
+		return tinted;
+	}
+	
+	// Every cell code fits in the type, owner and facing bits of ReplayFormat
+	static final int CELL_CODE_COUNT = 32;
+	
+	/**
+	 * Renders the picture of every cell code, as a {@link Tile} shows it, side by side into a single image: the cell of code
+	 * <code>c</code> takes the square at <code>x = c * tileSize</code>. The squares of codes no cell is encoded to are left transparent.
+	 * Must be called on the JavaFX application thread.
+	 */
+	final Image createCellAtlas(int tileSize)
+	{
+		HBox row = new HBox();
+		for(int cell = 0; cell < CELL_CODE_COUNT; cell++)
+		{
+			if(ReplayFormat.isValidCell((byte) cell))
+			{
+				Tile tile = new Tile(this, tileSize);
+				tile.setCell((byte) cell);
+				row.getChildren().add(tile);
+			}
+			else
+			{
+				Pane blank = new Pane();
+				blank.setMinSize(tileSize, tileSize);
+				blank.setMaxSize(tileSize, tileSize);
+				blank.setPrefSize(tileSize, tileSize);
+				row.getChildren().add(blank);
+			}
+		}
+		
+		// Snapshots only lay out nodes that are part of a scene
+		new Scene(row);
+		SnapshotParameters parameters = new SnapshotParameters();
+		parameters.setFill(Color.TRANSPARENT);
+		return row.snapshot(parameters, null);
+	}
+}
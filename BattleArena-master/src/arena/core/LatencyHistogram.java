@@ -0,0 +1,100 @@
+package arena.core;
+
+/**
+ * Histogram of durations in nanoseconds, with buckets that grow exponentially: each power of 2 is split into 8 buckets, so a percentile is
+ * off by at most 12.5% while the whole range of a long fits into a few hundred counters. Recording a value is a handful of bit operations
+ * and never allocates.
+ *
+ * <p>
+ * A histogram is not thread-safe; each match records into its own and {@link #add(LatencyHistogram)} merges them.
+ * </p>
+ */
+final class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2; // values below are counted exactly
+	private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+	
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long count;
+	private long sum;
+	private long max;
+	
+	final void record(long value)
+	{
+		if(value < 0)
+			value = 0;
+		
+		counts[getBucket(value)]++;
+		count++;
+		sum += value;
+		if(value > max)
+			max = value;
+	}
+	
+	final void add(LatencyHistogram other)
+	{
+		for(int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+			counts[bucket] += other.counts[bucket];
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+	
+	final long getCount()
+	{
+		return count;
+	}
+	
+	final long getMax()
+	{
+		return max;
+	}
+	
+	final double getMean()
+	{
+		return (count == 0) ? 0 : sum / (double) count;
+	}
+	
+	/**
+	 * Returns the smallest bucket bound that at least the specified percentage of the values are below or equal to.
+	 */
+	final long getPercentile(double percentile)
+	{
+		if(count == 0)
+			return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for(int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+		{
+			seen += counts[bucket];
+			if(seen >= rank)
+				return Math.min(getBucketMax(bucket), max);
+		}
+		
+		return max;
+	}
+	
+	private static final int getBucket(long value)
+	{
+		if(value < LINEAR_LIMIT)
+			return (int) value;
+		
+		// The exponent picks the power of 2, the next bits below the leading one pick the sub-bucket
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	private static final long getBucketMax(int bucket)
+	{
+		if(bucket < LINEAR_LIMIT)
+			return bucket;
+		
+		int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -1,13 +1,18 @@
 package arena.core;
 
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-import javafx.scene.paint.Color;
+import arena.core.GameState.EntityType;
 
 final class Map
 {
@@ -16,10 +21,26 @@ final class Map
 	private final Set<Entity> entities;
 	private final Set<Entity> entitiesToRemove;
 	private final List<Player> players;
+	private final List<Entity>[] cells; // entities occupying each cell, indexed by (y * width + x) and sorted by id
+	private final List<Entity[]> collisionPairs;
+	private int nextEntityId;
+	private EntityType[][] typeGrid; // type of the entity returned by getEntity for each cell, shared with game states
+	private boolean typeGridShared;
+	private final int[] typeColumnVersions; // a column can be written in place only if its version matches typeGridVersion
+	private int typeGridVersion;
+	private int terrainVersion; // changes whenever a wall or the storm appears or disappears
+	private BitSet[] changedCellSets = new BitSet[0]; // one per consumer, see trackChangedCells
+	private ShortBuffer distanceTable; // precomputed distances of the terrain at distanceTableVersion, null if none
+	private int distanceTableVersion;
+	private PathfindingGrid pathfindingGrid; // built on the first path query
 	private int stormSize;
+	private final int[] stormIds; // the id the storm of each covered cell was given, -1 for cells it does not cover yet
+	private final Storm storm; // returned for every cell the storm shows in
+	private final List<Entity> stormCellOccupants; // occupants of a covered cell while it collides, the storm included
 	private final double stormCoverage = 0.65; // 0.65 is how much the storm can advance (0 none, 1 full map)
 	private final int stormMaxSize;
 	
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	Map(int width, int height)
 	{
 		if(width <= 0)
@@ -30,10 +51,18 @@ final class Map
 		
 		this.width = width;
 		this.height = height;
-		entities = new HashSet<>();
+		entities = new LinkedHashSet<>(); // iterates in creation order, which keeps ticks deterministic
 		entitiesToRemove = new HashSet<>();
 		players = new ArrayList<>();
+		cells = new List[width * height];
+		collisionPairs = new ArrayList<>();
+		typeColumnVersions = new int[width];
+		resetTypeGrid();
 		stormSize = 0;
+		stormIds = new int[width * height];
+		Arrays.fill(stormIds, -1);
+		storm = new Storm(this, -1, -1, -1);
+		stormCellOccupants = new ArrayList<>();
 		stormMaxSize = (int) Math.max(1, (int)Math.sqrt(width * height / 2) * stormCoverage);
 	}
 	
@@ -42,50 +71,147 @@ final class Map
 		entitiesToRemove.clear();
 		entities.clear();
 		players.clear();
+		for(List<Entity> cell : cells)
+		{
+			if(cell != null)
+				cell.clear();
+		}
+		nextEntityId = 0;
+		resetTypeGrid();
 		stormSize = 0;
+		Arrays.fill(stormIds, -1);
+		distanceTable = null;
 	}
 	
-	final void generateWalls(double wallDensity) // wallDensity = [0, 1]
+	private final void resetTypeGrid()
 	{
-		int centerX = width / 2;
-		int centerY = height / 2;
-		int centerSize = 2;
-		
-		for(int y = 0; y < height; y++)
+		typeGrid = new EntityType[width][height];
+		for(EntityType[] column : typeGrid)
+			Arrays.fill(column, EntityType.Empty);
+		typeGridShared = false;
+		typeGridVersion++;
+		Arrays.fill(typeColumnVersions, typeGridVersion);
+		terrainVersion++;
+	}
+	
+	final int getTerrainVersion()
+	{
+		return terrainVersion;
+	}
+	
+	/**
+	 * Sets the distance table of the current terrain, see {@link MapLibrary}. The table only applies until a wall or the storm changes.
+	 */
+	final void setDistanceTable(ShortBuffer distanceTable)
+	{
+		this.distanceTable = distanceTable;
+		distanceTableVersion = terrainVersion;
+	}
+	
+	/**
+	 * Returns the distance table of the terrain at the specified version, or null if there is none.
+	 */
+	final ShortBuffer getDistanceTable(int terrainVersion)
+	{
+		return (terrainVersion == distanceTableVersion) ? distanceTable : null;
+	}
+	
+	/**
+	 * Returns the grid that path queries on this map are searched in, built on first use. See {@link PathfindingGrid} for how it is shared.
+	 */
+	final synchronized PathfindingGrid getPathfindingGrid()
+	{
+		if(pathfindingGrid == null)
+			pathfindingGrid = new PathfindingGrid(width, height);
+		return pathfindingGrid;
+	}
+	
+	/**
+	 * Returns the current type grid and marks it as shared. The map never writes into a shared array again;
+	 * instead, the first change to a column after this call copies that column (copy-on-write), so the
+	 * returned grid stays a valid snapshot while a snapshot only costs as much as the columns that change.
+	 */
+	final EntityType[][] shareTypeGrid()
+	{
+		if(!typeGridShared)
 		{
-			for(int x = 0; x < width / 2; x++)
-			{
-				// Ignore center
-				if(	x >= centerX - centerSize &&
-					x <= centerX + centerSize &&
-					y >= centerY - centerSize &&
-					y <= centerY + centerSize)
-					continue;
-				
-				if(Math.random() < wallDensity)
-				{
-					addWall(x, y);
-					addWall(width - x - 1, y); // vertical symmetry
-				}
-			}
+			typeGridShared = true;
+			typeGridVersion++;
 		}
+		return typeGrid;
+	}
+	
+	private static final boolean isTerrain(EntityType type)
+	{
+		return type == EntityType.Wall || type == EntityType.Storm;
 	}
 	
-	final void generateHealthPacks(double density) // density = [0, 1]
+	/**
+	 * Returns a new set of the cells touched from now on, indexed by <code>y * width + x</code>. A set bit means the cell's entity,
+	 * its owner or its facing may have changed, so the consumer has to compare against what it last saw, and clears the bits it handled.
+	 * Every consumer tracks its own set, so that the replay writer and the GUI never consume each other's changes, and nothing is
+	 * tracked when nobody consumes the changes.
+	 */
+	final BitSet trackChangedCells()
 	{
-		for(int y = 0; y < height; y++)
+		BitSet changedCells = new BitSet(width * height);
+		changedCellSets = Arrays.copyOf(changedCellSets, changedCellSets.length + 1);
+		changedCellSets[changedCellSets.length - 1] = changedCells;
+		return changedCells;
+	}
+	
+	/**
+	 * Stops tracking the specified set of changed cells.
+	 */
+	final void untrackChangedCells(BitSet changedCells)
+	{
+		for(int i = 0; i < changedCellSets.length; i++)
 		{
-			for(int x = 0; x < width / 2; x++)
+			if(changedCellSets[i] == changedCells)
 			{
-				if(Math.random() < density)
-				{
-					addHealthPack(x, y);
-					addHealthPack(width - x - 1, y); // vertical symmetry
-				}
+				BitSet[] sets = new BitSet[changedCellSets.length - 1];
+				System.arraycopy(changedCellSets, 0, sets, 0, i);
+				System.arraycopy(changedCellSets, i + 1, sets, i, sets.length - i);
+				changedCellSets = sets;
+				return;
 			}
 		}
 	}
 	
+	final void markChanged(int x, int y)
+	{
+		int cell = y * width + x;
+		for(BitSet changedCells : changedCellSets)
+			changedCells.set(cell);
+	}
+	
+	private final void refreshType(int x, int y)
+	{
+		markChanged(x, y);
+		
+		EntityType type = Entity.getEntityType(getEntity(x, y));
+		EntityType oldType = typeGrid[x][y];
+		if(oldType == type)
+			return;
+		
+		if(isTerrain(oldType) || isTerrain(type))
+			terrainVersion++;
+		
+		if(typeGridShared)
+		{
+			typeGrid = typeGrid.clone();
+			typeGridShared = false;
+		}
+		
+		if(typeColumnVersions[x] != typeGridVersion)
+		{
+			typeGrid[x] = typeGrid[x].clone();
+			typeColumnVersions[x] = typeGridVersion;
+		}
+		
+		typeGrid[x][y] = type;
+	}
+	
 	final int getWidth()
 	{
 		return width;
@@ -102,7 +228,7 @@ final class Map
 			return null;
 		
 		Wall wall = new Wall(this, x, y);
-		entities.add(wall);
+		register(wall);
 		return wall;
 	}
 	
@@ -118,13 +244,13 @@ final class Map
 		return isEmpty(x, y);
 	}
 	
-	final Player addPlayer(int x, int y, String name, String className, Color color)
+	final Player addPlayer(int x, int y, String name, String className, double hue)
 	{
 		if(!canAddPlayer(x, y))
 			return null;
 		
-		Player player = new Player(this, x, y, name, className, color);
-		entities.add(player);
+		Player player = new Player(this, x, y, name, className, hue);
+		register(player);
 		players.add(player);
 		
 		return player;
@@ -148,7 +274,7 @@ final class Map
 			return null;
 		
 		Projectile projectile = new Projectile(this, x, y, speedX, speedY, ownerPlayer);
-		entities.add(projectile);
+		register(projectile);
 		return projectile;
 	}
 	
@@ -170,7 +296,7 @@ final class Map
 			return null;
 		
 		Mine mine = new Mine(this, x, y);
-		entities.add(mine);
+		register(mine);
 		return mine;
 	}
 	
@@ -192,7 +318,7 @@ final class Map
 			return null;
 		
 		HealthPack healthPack = new HealthPack(this, x, y);
-		entities.add(healthPack);
+		register(healthPack);
 		return healthPack;
 	}
 	
@@ -208,26 +334,45 @@ final class Map
 		return isEmpty(x, y);
 	}
 	
-	final Storm addStorm(int x, int y)
+	private final void register(Entity entity)
 	{
-		if(!isWithinBounds(x, y))
-			return null;
-		
-		Entity entity = getEntity(x, y);
-		
-		if(entity instanceof Storm)
-			return null;
-		
-		Storm storm = new Storm(this, x, y);
-		entities.add(storm);
-		
-		if(entity != null)
+		entities.add(entity);
+		getCell(entity.getX(), entity.getY()).add(entity);
+		refreshType(entity.getX(), entity.getY());
+	}
+	
+	private final List<Entity> getCell(int x, int y)
+	{
+		int index = y * width + x;
+		List<Entity> cell = cells[index];
+		if(cell == null)
 		{
-			entity.onCollidedGeneric(storm);
-			storm.onCollidedGeneric(entity);
+			cell = new ArrayList<>(2);
+			cells[index] = cell;
 		}
+		return cell;
+	}
+	
+	final void onEntityMoved(Entity entity, int oldX, int oldY)
+	{
+		// Entities that were already removed from the map are no longer indexed
+		if(!getCell(oldX, oldY).remove(entity))
+			return;
 		
-		return storm;
+		// Keep the cell sorted by id so that collisions are dispatched in creation order
+		List<Entity> cell = getCell(entity.getX(), entity.getY());
+		int index = cell.size();
+		while(index > 0 && cell.get(index - 1).getId() > entity.getId())
+			index--;
+		cell.add(index, entity);
+		
+		refreshType(oldX, oldY);
+		refreshType(entity.getX(), entity.getY());
+	}
+	
+	final int nextEntityId()
+	{
+		return nextEntityId++;
 	}
 	
 	final boolean isWithinBounds(int x, int y)
@@ -248,24 +393,39 @@ final class Map
 		if(!isWithinBounds(x, y))
 			return null;
 		
-		for(Player player : players)
-		{
-			if(player.getX() == x && player.getY() == y)
-				return player;
-		}
+		int index = y * width + x;
+		Entity entity = getOccupant(index);
+		int stormId = stormIds[index];
+		if(stormId < 0 || (entity instanceof Player && !entity.isDestroyed()))
+			return entity;
 		
-		for(Entity entity : entities)
+		// The storm shows like an entity created when it covered the cell
+		return (entity == null || stormId < entity.getId()) ? storm : entity;
+	}
+	
+	/**
+	 * Returns the entity shown in the cell, leaving the storm out.
+	 */
+	private final Entity getOccupant(int index)
+	{
+		List<Entity> cell = cells[index];
+		if(cell == null || cell.isEmpty())
+			return null;
+		
+		// Living players take precedence over anything sharing their cell
+		for(Entity entity : cell)
 		{
-			if(entity.getX() == x && entity.getY() == y)
+			if(entity instanceof Player && !entity.isDestroyed())
 				return entity;
 		}
 		
-		return null;
+		return cell.get(0);
 	}
 	
 	final void destroy(Entity entity)
 	{
 		entitiesToRemove.add(entity);
+		refreshType(entity.getX(), entity.getY());
 		
 		if(entity instanceof Player)
 		{
@@ -282,24 +442,65 @@ final class Map
 		}
 	}
 	
-	private final void checkCollisions()
+	final void checkCollisions()
 	{
-		Entity[] entities = this.entities.toArray(new Entity[0]);
-		for(int i = 0; i < entities.length - 1; i++)
+		// Only entities sharing a cell can collide, so gather the pairs of every occupied cell.
+		// Each cell is visited once, through its oldest occupant.
+		for(Entity entity : entities)
 		{
-			for(int j = i + 1; j < entities.length; j++)
+			int index = entity.getY() * width + entity.getX();
+			List<Entity> cell = cells[index];
+			if(cell.get(0) != entity)
+				continue;
+			
+			if(stormIds[index] >= 0)
+				cell = getStormCellOccupants(cell, stormIds[index]);
+			
+			if(cell.size() < 2)
+				continue;
+			
+			for(int i = 0; i < cell.size() - 1; i++)
 			{
-				Entity entity1 = entities[i];
-				Entity entity2 = entities[j];
-				if(entity1.getX() == entity2.getX() && entity1.getY() == entity2.getY())
+				for(int j = i + 1; j < cell.size(); j++)
 				{
-					entity1.onCollidedGeneric(entity2);
-					entity2.onCollidedGeneric(entity1);
+					collisionPairs.add(new Entity[] { cell.get(i), cell.get(j) });
 				}
 			}
 		}
+		
+		// Dispatch in the same order as a pairwise sweep over the entities in creation order
+		collisionPairs.sort(COLLISION_ORDER);
+		for(Entity[] pair : collisionPairs)
+		{
+			pair[0].onCollidedGeneric(pair[1]);
+			pair[1].onCollidedGeneric(pair[0]);
+		}
+		collisionPairs.clear();
+	}
+	
+	/**
+	 * Returns the occupants of a covered cell along with a storm entity for the cell, in id order.
+	 */
+	private final List<Entity> getStormCellOccupants(List<Entity> cell, int stormId)
+	{
+		Entity first = cell.get(0);
+		int position = 0;
+		while(position < cell.size() && cell.get(position).getId() < stormId)
+			position++;
+		
+		stormCellOccupants.clear();
+		stormCellOccupants.addAll(cell);
+		stormCellOccupants.add(position, new Storm(this, first.getX(), first.getY(), stormId));
+		return stormCellOccupants;
 	}
 	
+	private static final Comparator<Entity[]> COLLISION_ORDER = (pair1, pair2) ->
+	{
+		if(pair1[0].getId() != pair2[0].getId())
+			return Integer.compare(pair1[0].getId(), pair2[0].getId());
+		return Integer.compare(pair1[1].getId(), pair2[1].getId());
+	};
+	
 	private final void updateAll(Collection<? extends Entity> entities)
 	{
 		for(Entity entity : entities)
@@ -312,7 +513,14 @@ final class Map
 	{
 		if(entitiesToRemove.size() > 0)
 		{
-			entities.removeAll(entitiesToRemove);
+			for(Entity entity : entitiesToRemove)
+			{
+				if(entities.remove(entity))
+				{
+					getCell(entity.getX(), entity.getY()).remove(entity);
+					refreshType(entity.getX(), entity.getY());
+				}
+			}
 			entitiesToRemove.clear();
 		}
 	}
@@ -325,17 +533,30 @@ final class Map
 		deleteRemovedEntities();
 	}
 	
+	/**
+	 * Grows the storm by one ring: the cells whose distance to the closest edge is the new storm size, visited row by row. Each covered
+	 * cell takes the next entity id, as if a storm entity was created in it, and whatever the cell showed collides with the storm.
+	 */
 	final void advanceStorm()
 	{
-		stormSize = Math.min(stormSize + 1, stormMaxSize);
-		
-		for(int y = 0; y < height; y++)
+		if(stormSize < stormMaxSize)
 		{
-			for(int x = 0; x < width; x++)
+			stormSize++;
+			int firstX = stormSize - 1;
+			int lastX = width - stormSize;
+			for(int y = 0; y < height; y++)
 			{
-				if(isWithinStorm(x, y))
+				int rowDistance = Math.min(y + 1, height - y);
+				if(rowDistance == stormSize)
 				{
-					addStorm(x, y);
+					for(int x = firstX; x <= lastX; x++)
+						coverWithStorm(x, y);
+				}
+				else if(rowDistance > stormSize && firstX <= lastX)
+				{
+					coverWithStorm(firstX, y);
+					if(lastX != firstX)
+						coverWithStorm(lastX, y);
 				}
 			}
 		}
@@ -343,6 +564,21 @@ final class Map
 		deleteRemovedEntities();
 	}
 	
+	private final void coverWithStorm(int x, int y)
+	{
+		int index = y * width + x;
+		Entity entity = getOccupant(index);
+		stormIds[index] = nextEntityId();
+		refreshType(x, y);
+		
+		if(entity != null)
+		{
+			Storm cellStorm = new Storm(this, x, y, stormIds[index]);
+			entity.onCollidedGeneric(cellStorm);
+			cellStorm.onCollidedGeneric(entity);
+		}
+	}
+	
 	final int getStormSize()
 	{
 		return stormSize;
@@ -355,10 +591,16 @@ final class Map
 	
 	final boolean isWithinStorm(int x, int y)
 	{
-		double minX = Math.min(x + 1, Math.abs(x - width));
-		double minY = Math.min(y + 1, Math.abs(y - height));
-		double distance = Math.min(minX, minY);
-		return distance <= stormSize;
+		return isWithinBounds(x, y) && getEdgeDistance(x, y, width, height) <= stormSize;
+	}
+	
+	/**
+	 * Returns the distance of a cell to the closest edge of the map, 1 for the cells along the edges: the storm covers the cells
+	 * whose distance is at most its size.
+	 */
+	static final int getEdgeDistance(int x, int y, int width, int height)
+	{
+		return Math.min(Math.min(x + 1, width - x), Math.min(y + 1, height - y));
 	}
 
 	final Set<Entity> getEntities()
@@ -0,0 +1,232 @@
+package arena.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.LongStream;
+
+/**
+ * Generates the {@link MapLayout} of a seed: symmetric walls and health packs, then the spawn of player 1 and its mirror for player 2,
+ * drawing again from the same stream until both players can reach each other. A candidate is only a pair of bitsets, and reachability is
+ * a flood fill over them, so a rejected candidate costs neither a {@link GameState} nor a path search.
+ *
+ * <p>
+ * The generator draws its numbers exactly as the map used to, so a seed produces the same map whether it comes from the pool or not.
+ * Layouts for a range of seeds can be generated ahead of time with {@link #pregenerate(long, int)}, which spreads the seeds over the
+ * threads of the calling fork/join pool (the common pool outside of one), or read from a {@link MapLibrary}; the pool then serves them to
+ * every match played on these seeds.
+ * </p>
+ */
+final class MapGenerator
+{
+	private static final int CENTER_SIZE = 2; // half the size of the wall-free square at the center of the map
+	
+	private final int width;
+	private final int height;
+	private final ConcurrentHashMap<Long, MapLayout> pool = new ConcurrentHashMap<>();
+	
+	MapGenerator(int width, int height)
+	{
+		if(width <= 0)
+			throw new IllegalArgumentException("Width not in range [1..inf]: " + width);
+		
+		if(height <= 0)
+			throw new IllegalArgumentException("Height not in range [1..inf]: " + height);
+		
+		this.width = width;
+		this.height = height;
+	}
+	
+	final int getWidth()
+	{
+		return width;
+	}
+	
+	final int getHeight()
+	{
+		return height;
+	}
+	
+	/**
+	 * Generates the layouts of the seeds <code>firstSeed</code> to <code>firstSeed + count - 1</code> in parallel and keeps them in the pool.
+	 */
+	final void pregenerate(long firstSeed, int count)
+	{
+		LongStream.range(firstSeed, firstSeed + count).parallel().forEach(seed -> pool.computeIfAbsent(seed, this::generate));
+	}
+	
+	/**
+	 * Keeps every map of the library in the pool, in place of the maps their seeds generate (which they are equal to).
+	 *
+	 * @throws IllegalArgumentException when the maps of the library do not have the size of the generated maps
+	 * @throws IOException when a map of the library is broken
+	 */
+	final void addLayouts(MapLibrary library) throws IOException
+	{
+		if(library.getWidth() != width || library.getHeight() != height)
+			throw new IllegalArgumentException("Library of " + library.getWidth() + "x" + library.getHeight() + " maps for a generator of " + width + "x" + height + " maps");
+		
+		for(int i = 0; i < library.getMapCount(); i++)
+		{
+			MapLayout layout = library.getLayout(i);
+			pool.put(layout.getSeed(), layout);
+		}
+	}
+	
+	/**
+	 * Returns the layout of the seed from the pool, or generates it without keeping it when it was not pregenerated.
+	 */
+	final MapLayout getLayout(long seed)
+	{
+		MapLayout layout = pool.get(seed);
+		return (layout != null) ? layout : generate(seed);
+	}
+	
+	final int getPoolSize()
+	{
+		return pool.size();
+	}
+	
+	final void clearPool()
+	{
+		pool.clear();
+	}
+	
+	final MapLayout generate(long seed)
+	{
+		// The map draws from the first stream split from the seed, the agents from the next ones (see Game.generateMap)
+		SplittableRandom random = new SplittableRandom(seed).split();
+		
+		int size = width * height;
+		BitSet walls = new BitSet(size);
+		BitSet occupied = new BitSet(size);
+		int[] wallOrder = new int[size];
+		int[] healthPackOrder = new int[size];
+		int[] queue = new int[size];
+		BitSet visited = new BitSet(size);
+		
+		while(true)
+		{
+			walls.clear();
+			occupied.clear();
+			int wallCount = generateWalls(Game.MAP_WALL_DENSITY, random, walls, occupied, wallOrder);
+			int healthPackCount = generateHealthPacks(Game.MAP_HEALTH_PACK_DENSITY, random, occupied, healthPackOrder);
+			
+			int player1Cell;
+			do
+			{
+				int x = random.nextInt(width);
+				int y = random.nextInt(height);
+				player1Cell = y * width + x;
+			}
+			while(occupied.get(player1Cell));
+			
+			int player1X = player1Cell % width;
+			int player2Cell = player1Cell / width * width + (width - player1X - 1);
+			if(player2Cell != player1Cell && isReachable(walls, player1Cell, player2Cell, queue, visited))
+			{
+				return new MapLayout(width, height, seed, Arrays.copyOf(wallOrder, wallCount),
+									 Arrays.copyOf(healthPackOrder, healthPackCount), player1Cell, player2Cell);
+			}
+		}
+	}
+	
+	private final int generateWalls(double wallDensity, SplittableRandom random, BitSet walls, BitSet occupied, int[] order) // wallDensity = [0, 1]
+	{
+		int centerX = width / 2;
+		int centerY = height / 2;
+		int count = 0;
+		
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width / 2; x++)
+			{
+				// Ignore center
+				if(	x >= centerX - CENTER_SIZE &&
+					x <= centerX + CENTER_SIZE &&
+					y >= centerY - CENTER_SIZE &&
+					y <= centerY + CENTER_SIZE)
+					continue;
+				
+				if(random.nextDouble() < wallDensity)
+				{
+					count = add(y * width + x, occupied, order, count);
+					count = add(y * width + (width - x - 1), occupied, order, count); // vertical symmetry
+				}
+			}
+		}
+		
+		for(int i = 0; i < count; i++)
+			walls.set(order[i]);
+		return count;
+	}
+	
+	private final int generateHealthPacks(double density, SplittableRandom random, BitSet occupied, int[] order) // density = [0, 1]
+	{
+		int count = 0;
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width / 2; x++)
+			{
+				if(random.nextDouble() < density)
+				{
+					count = add(y * width + x, occupied, order, count);
+					count = add(y * width + (width - x - 1), occupied, order, count); // vertical symmetry
+				}
+			}
+		}
+		return count;
+	}
+	
+	private static final int add(int cell, BitSet occupied, int[] order, int count)
+	{
+		// Like the map, an occupied cell is left as is
+		if(occupied.get(cell))
+			return count;
+		
+		occupied.set(cell);
+		order[count] = cell;
+		return count + 1;
+	}
+	
+	/**
+	 * Flood fills the cells that are not walls from the start, the same 4-neighbor moves {@link PathfindingGrid} searches with.
+	 */
+	private final boolean isReachable(BitSet walls, int start, int destination, int[] queue, BitSet visited)
+	{
+		visited.clear();
+		visited.set(start);
+		queue[0] = start;
+		int head = 0;
+		int tail = 1;
+		while(head < tail)
+		{
+			int cell = queue[head++];
+			if(cell == destination)
+				return true;
+			
+			int x = cell % width;
+			if(x > 0)
+				tail = visit(cell - 1, walls, visited, queue, tail);
+			if(x < width - 1)
+				tail = visit(cell + 1, walls, visited, queue, tail);
+			if(cell >= width)
+				tail = visit(cell - width, walls, visited, queue, tail);
+			if(cell < width * (height - 1))
+				tail = visit(cell + width, walls, visited, queue, tail);
+		}
+		return false;
+	}
+	
+	private static final int visit(int cell, BitSet walls, BitSet visited, int[] queue, int tail)
+	{
+		if(walls.get(cell) || visited.get(cell))
+			return tail;
+		
+		visited.set(cell);
+		queue[tail] = cell;
+		return tail + 1;
+	}
+}
@@ -0,0 +1,123 @@
+package arena.core;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Walls, health packs and spawn positions of a generated map, detached from any {@link Map} so that it can be generated on any thread,
+ * kept in a pool and applied to a map later. The cells are indexed by <code>y * width + x</code> and listed in the order their entities
+ * are added, so applying a layout gives every entity the same id as generating the map in place would.
+ *
+ * <p>
+ * A layout read from a {@link MapLibrary} also carries the distance table of its terrain, which the map hands over to pathfinding.
+ * </p>
+ */
+final class MapLayout
+{
+	private final int width;
+	private final int height;
+	private final long seed;
+	private final int[] walls;
+	private final int[] healthPacks;
+	private final int player1Cell;
+	private final int player2Cell;
+	private final ShortBuffer distances; // null when not precomputed
+	
+	MapLayout(int width, int height, long seed, int[] walls, int[] healthPacks, int player1Cell, int player2Cell)
+	{
+		this(width, height, seed, walls, healthPacks, player1Cell, player2Cell, null);
+	}
+	
+	MapLayout(int width, int height, long seed, int[] walls, int[] healthPacks, int player1Cell, int player2Cell, ShortBuffer distances)
+	{
+		this.width = width;
+		this.height = height;
+		this.seed = seed;
+		this.walls = walls;
+		this.healthPacks = healthPacks;
+		this.player1Cell = player1Cell;
+		this.player2Cell = player2Cell;
+		this.distances = distances;
+	}
+	
+	final int getWidth()
+	{
+		return width;
+	}
+	
+	final int getHeight()
+	{
+		return height;
+	}
+	
+	final long getSeed()
+	{
+		return seed;
+	}
+	
+	final int[] getWallCells()
+	{
+		return walls;
+	}
+	
+	final int[] getHealthPackCells()
+	{
+		return healthPacks;
+	}
+	
+	final int getPlayer1Cell()
+	{
+		return player1Cell;
+	}
+	
+	final int getPlayer2Cell()
+	{
+		return player2Cell;
+	}
+	
+	/**
+	 * Returns the distance table of the terrain, see {@link MapLibrary}, or null when it was not precomputed.
+	 */
+	final ShortBuffer getDistances()
+	{
+		return distances;
+	}
+	
+	/**
+	 * Clears the map and adds the walls and health packs of the layout, along with its distance table if it has one.
+	 *
+	 * @throws IllegalArgumentException when the map does not have the size of the layout
+	 */
+	final void applyTerrain(Map map)
+	{
+		if(map.getWidth() != width || map.getHeight() != height)
+			throw new IllegalArgumentException("Layout of " + width + "x" + height + " applied to a map of " + map.getWidth() + "x" + map.getHeight());
+		
+		map.clear();
+		for(int cell : walls)
+			map.addWall(cell % width, cell / width);
+		for(int cell : healthPacks)
+			map.addHealthPack(cell % width, cell / width);
+		if(distances != null)
+			map.setDistanceTable(distances);
+	}
+	
+	final int getPlayer1X()
+	{
+		return player1Cell % width;
+	}
+	
+	final int getPlayer1Y()
+	{
+		return player1Cell / width;
+	}
+	
+	final int getPlayer2X()
+	{
+		return player2Cell % width;
+	}
+	
+	final int getPlayer2Y()
+	{
+		return player2Cell / width;
+	}
+}
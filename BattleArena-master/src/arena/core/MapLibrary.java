@@ -0,0 +1,349 @@
+package arena.core;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The <code>MapLibrary</code> class reads a fixed set of generated maps from a single file, so that benchmarks and tournaments can be played
+ * on the same maps every time, and so that starting a match only costs reading its map. All numbers are big-endian.
+ *
+ * <pre>
+ * library := MAGIC:int VERSION:short width:short height:short map* index trailer
+ * map     := seed:long player1:short player2:short wallCount:short healthPackCount:short wall:short* healthPack:short* distance:short*
+ * index   := offset:long*
+ * trailer := indexOffset:long mapCount:int MAGIC:int
+ * </pre>
+ *
+ * <p>
+ * Cells are indexed by <code>y * width + x</code>, and walls and health packs are listed in the order they are added to the map. Each map
+ * is the map its seed generates, so a match played on a library map is the same match as one played on the seed. The map ends with its
+ * distance table: for every source cell, the number of steps to every cell, or -1 when unreachable, as pathfinding sees the map before the
+ * storm first advances. While the walls are untouched, path queries read the table instead of searching the map.
+ * </p>
+ *
+ * <p>
+ * The library is memory-mapped in segments of up to {@link #MAX_SEGMENT_SIZE} bytes that never split a map; the distance tables are read
+ * straight from the mapping, and the operating system pages in only the tables of the maps that are played.
+ * </p>
+ *
+ * <p>
+ * To generate a library of 100 maps from the seeds 0 to 99, or print the contents of a library, use the command line:
+ * </p>
+ * <pre>
+ * java arena.core.MapLibrary generate maps.library 100 0
+ * java arena.core.MapLibrary info maps.library
+ * </pre>
+ *
+ * <p>
+ * A library can be played in the GUI with {@link BattleArena#startArena(Path, int, Class, Class)} and by tournaments with
+ * {@link Tournament#setMapLibrary(Path)}.
+ * </p>
+ *
+ * @author ERAU AI Club
+ */
+public final class MapLibrary
+{
+	static final int MAGIC = 0x42414D4C; // "BAML"
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 10;
+	static final int MAP_HEADER_SIZE = 16;
+	static final int INDEX_ENTRY_SIZE = 8;
+	static final int TRAILER_SIZE = 16;
+	static final int MAX_SEGMENT_SIZE = 1 << 30;
+	static final int MAX_CELLS = 1 << 14; // keeps cells and distances within a short, and a distance table within a segment
+	
+	private static final int GENERATION_BATCH_SIZE = 64; // distance tables computed at once before they are written
+	
+	private final int width;
+	private final int height;
+	private final MappedByteBuffer[] segments;
+	private final int[] mapSegments;
+	private final int[] mapOffsets; // relative to the segment
+	
+	private MapLibrary(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		if(size < HEADER_SIZE + TRAILER_SIZE)
+			throw new IOException("Not a map library.");
+		
+		ByteBuffer header = read(channel, 0, HEADER_SIZE);
+		ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+		if(header.getInt() != MAGIC || trailer.getInt(TRAILER_SIZE - 4) != MAGIC)
+			throw new IOException("Not a map library, or the library was not completely written.");
+		
+		short version = header.getShort();
+		if(version != VERSION)
+			throw new IOException("Unsupported map library version: " + version);
+		
+		width = header.getShort();
+		height = header.getShort();
+		if(width <= 0 || height <= 0 || width * height > MAX_CELLS)
+			throw new IOException("Unsupported map library size: " + width + "x" + height);
+		
+		long indexOffset = trailer.getLong();
+		int mapCount = trailer.getInt();
+		if(mapCount < 0 || indexOffset + (long) mapCount * INDEX_ENTRY_SIZE != size - TRAILER_SIZE)
+			throw new IOException("Broken map library index.");
+		
+		// Group consecutive maps into segments as big as possible
+		ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) mapCount * INDEX_ENTRY_SIZE);
+		mapSegments = new int[mapCount];
+		mapOffsets = new int[mapCount];
+		List<MappedByteBuffer> segmentList = new ArrayList<>();
+		long segmentStart = HEADER_SIZE;
+		long segmentEnd = HEADER_SIZE;
+		for(int i = 0; i < mapCount; i++)
+		{
+			long offset = index.getLong();
+			long end = (i + 1 < mapCount) ? index.getLong(index.position()) : indexOffset;
+			if(offset < segmentEnd || end < offset + MAP_HEADER_SIZE || end - offset > MAX_SEGMENT_SIZE)
+				throw new IOException("Broken map library index at map " + i);
+			
+			if(end - segmentStart > MAX_SEGMENT_SIZE)
+			{
+				segmentList.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+				segmentStart = offset;
+			}
+			
+			mapSegments[i] = segmentList.size();
+			mapOffsets[i] = (int) (offset - segmentStart);
+			segmentEnd = end;
+		}
+		segmentList.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+		segments = segmentList.toArray(new MappedByteBuffer[0]);
+	}
+	
+	private static final ByteBuffer read(FileChannel channel, long position, int size) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of map library.");
+		}
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * Maps the specified library into memory. The mapping stays valid after the file is closed, until the library is garbage collected.
+	 */
+	static final MapLibrary open(Path path) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return new MapLibrary(channel);
+		}
+	}
+	
+	final int getWidth()
+	{
+		return width;
+	}
+	
+	final int getHeight()
+	{
+		return height;
+	}
+	
+	final int getMapCount()
+	{
+		return mapOffsets.length;
+	}
+	
+	final long getSeed(int map)
+	{
+		return segments[mapSegments[map]].getLong(mapOffsets[map]);
+	}
+	
+	/**
+	 * Returns the layout of the specified map. Its distance table is a view of the mapped library, so layouts of different maps can be
+	 * read from different threads.
+	 *
+	 * @throws IOException when the map is broken
+	 */
+	final MapLayout getLayout(int map) throws IOException
+	{
+		ByteBuffer buffer = segments[mapSegments[map]].duplicate();
+		buffer.position(mapOffsets[map]);
+		
+		int cellCount = width * height;
+		long seed = buffer.getLong();
+		int player1Cell = buffer.getShort();
+		int player2Cell = buffer.getShort();
+		int wallCount = buffer.getShort();
+		int healthPackCount = buffer.getShort();
+		if(player1Cell < 0 || player1Cell >= cellCount || player2Cell < 0 || player2Cell >= cellCount || wallCount < 0 || healthPackCount < 0
+		   || buffer.remaining() < 2 * (wallCount + healthPackCount + cellCount * cellCount))
+			throw new IOException("Broken map " + map + " in map library.");
+		
+		int[] walls = new int[wallCount];
+		int[] healthPacks = new int[healthPackCount];
+		for(int i = 0; i < walls.length; i++)
+			walls[i] = buffer.getShort();
+		for(int i = 0; i < healthPacks.length; i++)
+			healthPacks[i] = buffer.getShort();
+		
+		buffer.limit(buffer.position() + 2 * cellCount * cellCount);
+		ShortBuffer distances = buffer.slice().asShortBuffer();
+		return new MapLayout(width, height, seed, walls, healthPacks, player1Cell, player2Cell, distances);
+	}
+	
+	/**
+	 * Generates the maps of the seeds <code>firstSeed</code> to <code>firstSeed + count - 1</code>, with their distance tables, into a new library.
+	 * The maps and their tables are computed in parallel on the calling fork/join pool (the common pool outside of one).
+	 *
+	 * @throws IllegalArgumentException when the maps are too big for a library
+	 */
+	static final void generate(Path library, int width, int height, long firstSeed, int count) throws IOException
+	{
+		int cellCount = width * height;
+		if(width <= 0 || height <= 0 || cellCount > MAX_CELLS)
+			throw new IllegalArgumentException("Map size not supported by a library: " + width + "x" + height);
+		
+		MapGenerator generator = new MapGenerator(width, height);
+		try(FileChannel channel = FileChannel.open(library, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+		{
+			long position = 0;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putShort(VERSION);
+			header.putShort((short) width);
+			header.putShort((short) height);
+			header.flip();
+			position += write(channel, header);
+			
+			ByteBuffer index = ByteBuffer.allocate(count * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+			for(int batchStart = 0; batchStart < count; batchStart += GENERATION_BATCH_SIZE)
+			{
+				long batchSeed = firstSeed + batchStart;
+				int batchSize = Math.min(GENERATION_BATCH_SIZE, count - batchStart);
+				ByteBuffer[] maps = IntStream.range(0, batchSize).parallel().mapToObj(i -> encode(generator.generate(batchSeed + i)))
+											 .toArray(ByteBuffer[]::new);
+				for(ByteBuffer map : maps)
+				{
+					index.putLong(position);
+					position += write(channel, map);
+				}
+			}
+			
+			index.putLong(position);
+			index.putInt(count);
+			index.putInt(MAGIC);
+			index.flip();
+			write(channel, index);
+		}
+	}
+	
+	private static final ByteBuffer encode(MapLayout layout)
+	{
+		int[] walls = layout.getWallCells();
+		int[] healthPacks = layout.getHealthPackCells();
+		short[] distances = PathfindingGrid.computeDistanceTable(layout);
+		
+		ByteBuffer map = ByteBuffer.allocate(MAP_HEADER_SIZE + 2 * (walls.length + healthPacks.length + distances.length));
+		map.putLong(layout.getSeed());
+		map.putShort((short) layout.getPlayer1Cell());
+		map.putShort((short) layout.getPlayer2Cell());
+		map.putShort((short) walls.length);
+		map.putShort((short) healthPacks.length);
+		for(int cell : walls)
+			map.putShort((short) cell);
+		for(int cell : healthPacks)
+			map.putShort((short) cell);
+		map.asShortBuffer().put(distances);
+		map.clear();
+		return map;
+	}
+	
+	private static final long write(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		long written = 0;
+		while(buffer.hasRemaining())
+			written += channel.write(buffer);
+		return written;
+	}
+	
+	/**
+	 * Prints the size of the maps of the library, how many there are, their wall density and how long reading all of them took.
+	 */
+	final void printInfo(PrintStream out) throws IOException
+	{
+		long startTime = System.nanoTime();
+		long walls = 0;
+		long healthPacks = 0;
+		long checksum = 0;
+		for(int i = 0; i < getMapCount(); i++)
+		{
+			MapLayout layout = getLayout(i);
+			walls += layout.getWallCells().length;
+			healthPacks += layout.getHealthPackCells().length;
+			
+			// Touch every distance, so that the timing includes paging the tables in
+			ShortBuffer distances = layout.getDistances();
+			for(int cell = 0; cell < distances.limit(); cell++)
+				checksum += distances.get(cell);
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		
+		int cellCount = width * height;
+		int mapCount = Math.max(1, getMapCount());
+		out.println("Maps:         " + getMapCount() + " of " + width + "x" + height);
+		out.println("Seeds:        " + ((getMapCount() > 0) ? getSeed(0) + " to " + getSeed(getMapCount() - 1) : "none"));
+		out.println("Walls:        " + String.format("%.1f%%", 100.0 * walls / mapCount / cellCount));
+		out.println("Health packs: " + String.format("%.1f%%", 100.0 * healthPacks / mapCount / cellCount));
+		out.println("Read in:      " + String.format("%.3f", seconds) + " seconds (checksum " + checksum + ")");
+	}
+	
+	/**
+	 * Generates a map library, or prints the contents of one.
+	 *
+	 * <pre>
+	 * java arena.core.MapLibrary generate maps.library [count] [firstSeed] [width] [height]
+	 * java arena.core.MapLibrary info maps.library
+	 * </pre>
+	 *
+	 * <p>
+	 * By default, 100 maps of 20x20 are generated from the seeds 0 to 99.
+	 * </p>
+	 *
+	 * @param args - the command and the library file, followed by the arguments of the command
+	 *
+	 * @throws IOException when the library cannot be written or read
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length >= 2 && args.length <= 6 && args.length != 5 && args[0].equals("generate"))
+		{
+			int count = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+			long firstSeed = (args.length > 3) ? Long.parseLong(args[3]) : 0;
+			int width = (args.length > 4) ? Integer.parseInt(args[4]) : 20;
+			int height = (args.length > 5) ? Integer.parseInt(args[5]) : 20;
+			
+			long startTime = System.nanoTime();
+			generate(Paths.get(args[1]), width, height, firstSeed, count);
+			double seconds = (System.nanoTime() - startTime) / 1e9;
+			System.out.println("Generated " + count + " maps into " + args[1] + " (" + Files.size(Paths.get(args[1])) / 1024 + " KB) in " + String.format("%.2f", seconds) + " seconds");
+		}
+		else if(args.length == 2 && args[0].equals("info"))
+		{
+			open(Paths.get(args[1])).printInfo(System.out);
+		}
+		else
+		{
+			System.err.println("Usage: MapLibrary generate <library> [count] [firstSeed] [width height]");
+			System.err.println("       MapLibrary info <library>");
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package arena.core;
+
+import javafx.scene.Node;
+
+/**
+ * Draws the cells of the map in the GUI. Cells are encoded as described by {@link ReplayFormat}, and a view only redraws a cell
+ * whose code changed, so callers can set every cell of a frame or only those they know changed.
+ */
+interface MapView
+{
+	/**
+	 * Returns the node the map is drawn into.
+	 */
+	Node getNode();
+	
+	/**
+	 * Shows the specified cell at the specified position.
+	 */
+	void setCell(int x, int y, byte cell);
+}
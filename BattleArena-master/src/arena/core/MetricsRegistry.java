@@ -0,0 +1,112 @@
+package arena.core;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The <code>MetricsRegistry</code> class collects the {@link AgentMetrics} of finished matches, adding up the metrics of every match
+ * played by the same agent class. A match records into its own metrics and only adds them to the registry once it is over, so the
+ * matches of a tournament never contend on the registry while they play.
+ *
+ * <p>
+ * To print how long SimpleAI takes to decide over 100 matches, simply call:
+ * </p>
+ * <pre>
+ * MetricsRegistry metrics = new MetricsRegistry();
+ * HeadlessMatch match = new HeadlessMatch(SimpleAI.class, RandomAI.class);
+ * match.setMetricsRegistry(metrics);
+ * for(int i = 0; i &lt; 100; i++)
+ *     match.play(i);
+ * metrics.print(System.out);
+ * </pre>
+ *
+ * @author ERAU AI Club
+ */
+public final class MetricsRegistry
+{
+	private final TreeMap<String, AgentMetrics> agents = new TreeMap<>();
+	
+	final synchronized void add(AgentMetrics metrics)
+	{
+		AgentMetrics total = agents.get(metrics.getAgentName());
+		if(total == null)
+			agents.put(metrics.getAgentName(), metrics.copy());
+		else
+			total.add(metrics);
+	}
+	
+	/**
+	 * Returns a copy of the metrics of every agent, ordered by name.
+	 *
+	 * @return the metrics of every agent
+	 */
+	public final synchronized List<AgentMetrics> getAgentMetrics()
+	{
+		List<AgentMetrics> metrics = new ArrayList<>(agents.size());
+		for(AgentMetrics agent : agents.values())
+			metrics.add(agent.copy());
+		return metrics;
+	}
+	
+	/**
+	 * Forgets the metrics of every agent.
+	 */
+	public final synchronized void clear()
+	{
+		agents.clear();
+	}
+	
+	/**
+	 * Prints the decision time, allocations, timeouts and exceptions of every agent, followed by the average number of calls to each {@link GameUtility}
+	 * method per turn. Methods no agent called are left out.
+	 *
+	 * @param out - the stream to print to
+	 */
+	public final void print(PrintStream out)
+	{
+		List<AgentMetrics> metrics = getAgentMetrics();
+		
+		out.println(String.format("%-16s %8s %8s %8s %10s %10s %10s %12s %12s", "Agent", "Turns", "Timeouts", "Errors", "p50 (ms)", "p99 (ms)", "max (ms)",
+								  "alloc/turn", "max alloc"));
+		for(AgentMetrics agent : metrics)
+		{
+			out.println(String.format("%-16s %8d %8d %8d %10.3f %10.3f %10.3f %12s %12s", agent.getAgentName(), agent.getTurns(), agent.getTimeouts(), agent.getErrors(),
+									  agent.getLatencyPercentile(50) / 1e6, agent.getLatencyPercentile(99) / 1e6, agent.getMaxLatency() / 1e6,
+									  formatBytes(agent.getMeanAllocatedBytes()), formatBytes(agent.getMaxAllocatedBytes())));
+		}
+		
+		out.println();
+		StringBuilder header = new StringBuilder(String.format("%-18s", "Calls per turn"));
+		for(AgentMetrics agent : metrics)
+			header.append(String.format(" %12.12s", agent.getAgentName()));
+		out.println(header);
+		for(AgentMetrics.UtilityMethod method : AgentMetrics.UtilityMethod.values())
+		{
+			long total = 0;
+			for(AgentMetrics agent : metrics)
+				total += agent.getUtilityCalls(method);
+			if(total == 0)
+				continue;
+			
+			StringBuilder row = new StringBuilder(String.format("%-18s", method));
+			for(AgentMetrics agent : metrics)
+			{
+				double perTurn = (agent.getTurns() == 0) ? 0 : agent.getUtilityCalls(method) / (double) agent.getTurns();
+				row.append(String.format(" %12.2f", perTurn));
+			}
+			out.println(row);
+		}
+	}
+	
+	private static final String formatBytes(double bytes)
+	{
+		if(bytes >= 1 << 20)
+			return String.format("%.1f MB", bytes / (1 << 20));
+		else if(bytes >= 1 << 10)
+			return String.format("%.1f KB", bytes / (1 << 10));
+		else
+			return String.format("%.0f B", bytes);
+	}
+}
@@ -0,0 +1,464 @@
+package arena.core;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import arena.core.GameState.EntityType;
+
+/**
+ * Pathfinding graph of a map: the walkability of every cell as a bitset, the primitive arrays {@link AStar} keeps its bookkeeping in,
+ * and the breadth-first distance fields of the current round. Cells are indexed by <code>y * width + x</code>.
+ *
+ * <p>
+ * A single path query is searched with {@link AStar}. When a start cell is queried again in the same round, its distance field (the
+ * number of steps from it to every other cell) is computed and kept until the round ends, and the paths from it are traced back from the
+ * field in O(path length). The repeated <code>calculatePath</code>, <code>isReachable</code> and <code>moveTowards</code> calls of a
+ * turn, which nearly all start from the player, therefore search the map at most twice. Maps read from a {@link MapLibrary} come with the
+ * fields of every source, which are copied instead of searched until the terrain first changes.
+ * </p>
+ *
+ * <p>
+ * Each {@link Map} builds its grid on the first path query and keeps it for every later match, so the grid goes away with the game. The
+ * walkability is only rebuilt when the walls or the storm changed since the last query, and the search arrays are reused from one search
+ * to the next, so a typical turn allocates nothing for pathfinding. The agents of a match decide one after the other, but one abandoned
+ * by its {@link AgentWatchdog} may still be searching, so callers hold the lock of the grid from {@link #update(GameState)} until they
+ * read the path.
+ * </p>
+ */
+final class PathfindingGrid
+{
+	private static final int MAX_FIELDS = 8;
+	
+	// Up, left, right, down: the order the neighbors have always been expanded in
+	private static final int[] NEIGHBOR_DX = { 0, -1, 1, 0 };
+	private static final int[] NEIGHBOR_DY = { -1, 0, 0, 1 };
+	
+	private final int width;
+	private final int height;
+	private final BitSet walkable;
+	private int terrainVersion = -1; // of the walkability, -1 before it is first built
+	private int round;
+	private ShortBuffer distanceTable; // of the current terrain, null when the fields have to be searched
+	
+	// Search state, only valid for visited cells
+	private final int[] g;
+	private final int[] f;
+	private final int[] parent;
+	private final int[] openOrder; // when the cell was first opened, breaks ties between equal f
+	private final BitSet visited;
+	private final BitSet closed;
+	private int openCount;
+	
+	// Open cells as an indexed binary min-heap ordered by (f, openOrder)
+	private final int[] heap;
+	private final int[] heapIndex;
+	private int heapSize;
+	
+	// Start cells searched with A* this round, the next query from one of them computes its distance field
+	private final int[] searchedSources;
+	private int searchedCount;
+	private int nextSearched; // the slot that is overwritten once all are taken
+	
+	// Distance fields of this round, -1 marks unreachable cells
+	private final int[][] fields;
+	private final int[] fieldSources;
+	private int fieldCount;
+	private int nextField;
+	
+	private final int[] queue;
+	private final int[] path;
+	
+	PathfindingGrid(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		int size = width * height;
+		walkable = new BitSet(size);
+		g = new int[size];
+		f = new int[size];
+		parent = new int[size];
+		openOrder = new int[size];
+		visited = new BitSet(size);
+		closed = new BitSet(size);
+		heap = new int[size];
+		heapIndex = new int[size];
+		searchedSources = new int[MAX_FIELDS];
+		fields = new int[MAX_FIELDS][];
+		fieldSources = new int[MAX_FIELDS];
+		queue = new int[size];
+		path = new int[size];
+	}
+	
+	/**
+	 * Brings the grid up to date with the specified game state of its map.
+	 */
+	final void update(GameState gameState)
+	{
+		if(terrainVersion != gameState.getTerrainVersion())
+			buildWalkability(gameState);
+		else if(round != gameState.getRound())
+			forgetRound(gameState.getRound());
+	}
+	
+	private final void buildWalkability(GameState gameState)
+	{
+		terrainVersion = gameState.getTerrainVersion();
+		distanceTable = gameState.getGameMap().getDistanceTable(terrainVersion);
+		forgetRound(gameState.getRound());
+		
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width; x++)
+			{
+				EntityType entityType = gameState.getEntityAt(x, y);
+				walkable.set(y * width + x, entityType != EntityType.Wall && entityType != EntityType.Storm);
+			}
+		}
+	}
+	
+	// The players moved, so other start cells will be queried
+	private final void forgetRound(int round)
+	{
+		this.round = round;
+		searchedCount = 0;
+		nextSearched = 0;
+		fieldCount = 0;
+		nextField = 0;
+	}
+	
+	final int getWidth()
+	{
+		return width;
+	}
+	
+	final int getHeight()
+	{
+		return height;
+	}
+	
+	final boolean isWalkable(int cell)
+	{
+		return walkable.get(cell);
+	}
+	
+	/**
+	 * Calculates the shortest path between the specified cells and returns its length, or 0 if end cannot be reached. The cells of the
+	 * path are read with {@link #getPathCell(int)}, from the first cell to visit up to the end cell.
+	 */
+	final int findPath(int start, int end)
+	{
+		int[] field = getDistanceField(start);
+		if(field != null)
+			return traceDistanceField(field, end);
+		
+		rememberSearch(start);
+		return AStar.calculatePath(this, start % width, start / width, end % width, end / width);
+	}
+	
+	final int getPathCell(int index)
+	{
+		return path[index];
+	}
+	
+	/**
+	 * Forgets the previous search.
+	 */
+	final void beginSearch()
+	{
+		visited.clear();
+		closed.clear();
+		openCount = 0;
+		heapSize = 0;
+	}
+	
+	final boolean isVisited(int cell)
+	{
+		return visited.get(cell);
+	}
+	
+	final boolean isClosed(int cell)
+	{
+		return closed.get(cell);
+	}
+	
+	final boolean isOpen(int cell)
+	{
+		return visited.get(cell) && !closed.get(cell);
+	}
+	
+	/**
+	 * Opens the cell with the specified costs, or lowers the costs of a cell that is already open.
+	 */
+	final void visit(int cell, int g, int f, int parent)
+	{
+		this.g[cell] = g;
+		this.f[cell] = f;
+		this.parent[cell] = parent;
+		
+		if(!visited.get(cell))
+		{
+			visited.set(cell);
+			openOrder[cell] = openCount++;
+			heap[heapSize] = cell;
+			heapIndex[cell] = heapSize;
+			heapSize++;
+		}
+		
+		siftUp(heapIndex[cell]);
+	}
+	
+	final int getG(int cell)
+	{
+		return g[cell];
+	}
+	
+	final int getF(int cell)
+	{
+		return f[cell];
+	}
+	
+	final boolean hasOpenCells()
+	{
+		return heapSize > 0;
+	}
+	
+	/**
+	 * Removes the open cell with the lowest f (the first opened one among equals) and moves it to the closed set.
+	 */
+	final int closeLowestF()
+	{
+		int cell = heap[0];
+		heapSize--;
+		if(heapSize > 0)
+		{
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
+		}
+		closed.set(cell);
+		return cell;
+	}
+	
+	private final boolean isLower(int cell1, int cell2)
+	{
+		if(f[cell1] != f[cell2])
+			return f[cell1] < f[cell2];
+		return openOrder[cell1] < openOrder[cell2];
+	}
+	
+	private final void siftUp(int index)
+	{
+		int cell = heap[index];
+		while(index > 0)
+		{
+			int parentIndex = (index - 1) >>> 1;
+			int parentCell = heap[parentIndex];
+			if(!isLower(cell, parentCell))
+				break;
+			heap[index] = parentCell;
+			heapIndex[parentCell] = index;
+			index = parentIndex;
+		}
+		heap[index] = cell;
+		heapIndex[cell] = index;
+	}
+	
+	private final void siftDown(int index)
+	{
+		int cell = heap[index];
+		while(true)
+		{
+			int childIndex = 2 * index + 1;
+			if(childIndex >= heapSize)
+				break;
+			if(childIndex + 1 < heapSize && isLower(heap[childIndex + 1], heap[childIndex]))
+				childIndex++;
+			int childCell = heap[childIndex];
+			if(!isLower(childCell, cell))
+				break;
+			heap[index] = childCell;
+			heapIndex[childCell] = index;
+			index = childIndex;
+		}
+		heap[index] = cell;
+		heapIndex[cell] = index;
+	}
+	
+	/**
+	 * Writes the path from start (excluded) to end (included) into {@link #getPathCell(int)} and returns its length, or 0 if end was not reached.
+	 */
+	final int tracePath(int start, int end)
+	{
+		if(start == end || !isVisited(end))
+			return 0;
+		
+		int length = 0;
+		for(int cell = end; cell != start; cell = parent[cell])
+			length++;
+		
+		int index = length;
+		for(int cell = end; cell != start; cell = parent[cell])
+			path[--index] = cell;
+		
+		return length;
+	}
+	
+	private final void rememberSearch(int source)
+	{
+		if(searchedCount < MAX_FIELDS)
+		{
+			searchedSources[searchedCount++] = source;
+		}
+		else
+		{
+			searchedSources[nextSearched] = source;
+			nextSearched = (nextSearched + 1) % MAX_FIELDS;
+		}
+	}
+	
+	/**
+	 * Returns the distance field of the source, computing it when the source was already searched this round, or null when it was not.
+	 */
+	private final int[] getDistanceField(int source)
+	{
+		for(int i = 0; i < fieldCount; i++)
+		{
+			if(fieldSources[i] == source)
+				return fields[i];
+		}
+		
+		boolean searched = false;
+		for(int i = 0; i < searchedCount; i++)
+			searched |= searchedSources[i] == source;
+		if(!searched)
+			return null;
+		
+		int slot;
+		if(fieldCount < MAX_FIELDS)
+		{
+			slot = fieldCount++;
+		}
+		else
+		{
+			slot = nextField;
+			nextField = (nextField + 1) % MAX_FIELDS;
+		}
+		
+		// The fields are only allocated once a turn repeats its queries
+		if(fields[slot] == null)
+			fields[slot] = new int[width * height];
+		
+		fieldSources[slot] = source;
+		if(distanceTable != null)
+			copyDistanceField(source, fields[slot]);
+		else
+			computeDistanceField(source, fields[slot]);
+		return fields[slot];
+	}
+	
+	/**
+	 * Writes the shortest path from the source of the field (excluded) to end (included) into {@link #getPathCell(int)} and returns its
+	 * length, or 0 if end cannot be reached.
+	 */
+	private final int traceDistanceField(int[] field, int end)
+	{
+		int length = field[end];
+		if(length <= 0)
+			return 0;
+		
+		// Walk back from the end, always stepping to a neighbor one step closer to the start
+		int cell = end;
+		for(int index = length - 1; index >= 0; index--)
+		{
+			path[index] = cell;
+			cell = getCloserNeighbor(field, cell);
+		}
+		
+		return length;
+	}
+	
+	private final int getCloserNeighbor(int[] field, int cell)
+	{
+		int x = cell % width;
+		int y = cell / width;
+		for(int i = 0; i < NEIGHBOR_DX.length; i++)
+		{
+			int neighborX = x + NEIGHBOR_DX[i];
+			int neighborY = y + NEIGHBOR_DY[i];
+			if(neighborX < 0 || neighborY < 0 || neighborX >= width || neighborY >= height)
+				continue;
+			
+			int neighbor = neighborY * width + neighborX;
+			if(field[neighbor] == field[cell] - 1)
+				return neighbor;
+		}
+		
+		throw new IllegalStateException("Broken distance field at cell " + cell);
+	}
+	
+	private final void copyDistanceField(int source, int[] field)
+	{
+		int offset = source * field.length;
+		for(int cell = 0; cell < field.length; cell++)
+			field[cell] = distanceTable.get(offset + cell);
+	}
+	
+	/**
+	 * Breadth-first search from the source over the walkable cells. The source itself is always expanded, even when a player stands in the storm.
+	 */
+	private final void computeDistanceField(int source, int[] field)
+	{
+		Arrays.fill(field, -1);
+		field[source] = 0;
+		queue[0] = source;
+		int head = 0;
+		int tail = 1;
+		
+		while(head < tail)
+		{
+			int cell = queue[head++];
+			int x = cell % width;
+			int y = cell / width;
+			int distance = field[cell] + 1;
+			
+			for(int i = 0; i < NEIGHBOR_DX.length; i++)
+			{
+				int neighborX = x + NEIGHBOR_DX[i];
+				int neighborY = y + NEIGHBOR_DY[i];
+				if(neighborX < 0 || neighborY < 0 || neighborX >= width || neighborY >= height)
+					continue;
+				
+				int neighbor = neighborY * width + neighborX;
+				if(field[neighbor] >= 0 || !walkable.get(neighbor))
+					continue;
+				
+				field[neighbor] = distance;
+				queue[tail++] = neighbor;
+			}
+		}
+	}
+	
+	/**
+	 * Computes the distance field of every source cell of the layout's terrain, as they would be searched before the storm advances,
+	 * and returns them one after the other.
+	 */
+	static final short[] computeDistanceTable(MapLayout layout)
+	{
+		PathfindingGrid grid = new PathfindingGrid(layout.getWidth(), layout.getHeight());
+		int size = layout.getWidth() * layout.getHeight();
+		grid.walkable.set(0, size);
+		for(int cell : layout.getWallCells())
+			grid.walkable.clear(cell);
+		
+		short[] table = new short[size * size];
+		int[] field = new int[size];
+		for(int source = 0; source < size; source++)
+		{
+			grid.computeDistanceField(source, field);
+			for(int cell = 0; cell < size; cell++)
+				table[source * size + cell] = (short) field[cell];
+		}
+		return table;
+	}
+}
@@ -0,0 +1,36 @@
+package arena.core;
+
+/**
+ * The speeds the GUI can play a match at, relative to one round every {@link ArenaGUI#SECS_PER_TICK} seconds.
+ */
+enum PlaybackSpeed
+{
+	Quarter(0.25, "0.25x"),
+	Half(0.5, "0.5x"),
+	Normal(1, "1x"),
+	Fast(2, "2x"),
+	Faster(4, "4x"),
+	Fastest(8, "8x"),
+	/** Live matches show the newest round played at every pulse of the screen, replays advance a round per pulse. */
+	Max(Double.POSITIVE_INFINITY, "Max");
+	
+	private final double multiplier;
+	private final String label;
+	
+	private PlaybackSpeed(double multiplier, String label)
+	{
+		this.multiplier = multiplier;
+		this.label = label;
+	}
+	
+	final double getRoundsPerSecond()
+	{
+		return multiplier / ArenaGUI.SECS_PER_TICK;
+	}
+	
+	@Override
+	public final String toString()
+	{
+		return label;
+	}
+}
@@ -1,6 +1,6 @@
 package arena.core;
 
-import javafx.scene.paint.Color;
+import arena.core.GameState.EntityType;
 
 final class Player extends Entity
 {
@@ -9,25 +9,28 @@ final class Player extends Entity
 	private int health = HEALTH_START;
 	private final String name;
 	private final String className;
-	private final Color color;
+	private final double hue;
 	private int shootCooldown = 0;
 	private int placeMineCooldown = 0;
 	private int xScaleMultiplier = 1;
+	private Action lastAction;
+	private EntityType causeOfDeath;
+	private boolean lastActionSuccessful;
 	static final int MINE_COOLDOWN = 10;
 	static final int SHOOT_COOLDOWN = 3;
 	
-	Player(Map map, int x, int y, String name, String className, Color color)
+	Player(Map map, int x, int y, String name, String className, double hue)
 	{
 		super(map, x, y);
 		this.name = name;
 		this.className = className;
-		this.color = color;
+		this.hue = hue;
 	}
 
 	@Override
 	void onCollided(Storm storm)
 	{
-		setHealth(0);
+		hurt(0, EntityType.Storm);
 	}
 	
 	@Override
@@ -40,7 +43,7 @@ final class Player extends Entity
 	@Override
 	final void onCollided(Mine mine)
 	{
-		setHealth(getHealth() - 1);
+		hurt(getHealth() - 1, EntityType.Mine);
 		mine.destroy();
 	}
 	
@@ -51,7 +54,7 @@ final class Player extends Entity
 		if(projectile.isOwner(this))
 			return;
 		
-		setHealth(getHealth() - 1);
+		hurt(getHealth() - 1, EntityType.Projectile);
 		projectile.destroy();
 	}
 	
@@ -67,13 +70,13 @@ final class Player extends Entity
 	
 	final boolean moveLeft()
 	{
-		xScaleMultiplier = -1;
+		setXScaleMultiplier(-1);
 		return move(getX() - 1, getY());
 	}
 	
 	final boolean moveRight()
 	{
-		xScaleMultiplier = 1;
+		setXScaleMultiplier(1);
 		return move(getX() + 1, getY());
 	}
 	
@@ -121,13 +124,13 @@ final class Player extends Entity
 	
 	final boolean placeMineLeft()
 	{
-		xScaleMultiplier = -1;
+		setXScaleMultiplier(-1);
 		return placeMine(getX() - 1, getY());
 	}
 	
 	final boolean placeMineRight()
 	{
-		xScaleMultiplier = 1;
+		setXScaleMultiplier(1);
 		return placeMine(getX() + 1, getY());
 	}
 	
@@ -158,13 +161,13 @@ final class Player extends Entity
 	
 	final boolean shootLeft()
 	{
-		xScaleMultiplier = -1;
+		setXScaleMultiplier(-1);
 		return shoot(-1, 0);
 	}
 	
 	final boolean shootRight()
 	{
-		xScaleMultiplier = 1;
+		setXScaleMultiplier(1);
 		return shoot(1, 0);
 	}
 	
@@ -203,6 +206,24 @@ final class Player extends Entity
 		}
 	}
 	
+	private final void hurt(int health, EntityType cause)
+	{
+		setHealth(health);
+		
+		if(isDead() && causeOfDeath == null)
+		{
+			causeOfDeath = cause;
+		}
+	}
+	
+	/**
+	 * Returns what killed the player, null while it is alive.
+	 */
+	final EntityType getCauseOfDeath()
+	{
+		return causeOfDeath;
+	}
+	
 	final String getName()
 	{
 		return name;
@@ -213,9 +234,9 @@ final class Player extends Entity
 		return className;
 	}
 	
-	final Color getColor()
+	final double getHue()
 	{
-		return color;
+		return hue;
 	}
 	
 	final int getXScaleMultiplier()
@@ -223,6 +244,34 @@ final class Player extends Entity
 		return xScaleMultiplier;
 	}
 	
+	private final void setXScaleMultiplier(int xScaleMultiplier)
+	{
+		if(this.xScaleMultiplier != xScaleMultiplier)
+		{
+			this.xScaleMultiplier = xScaleMultiplier;
+			map.markChanged(getX(), getY());
+		}
+	}
+	
+	/**
+	 * Remembers the action performed this round, null if the agent did not play.
+	 */
+	final void setLastAction(Action action, boolean successful)
+	{
+		lastAction = action;
+		lastActionSuccessful = successful;
+	}
+	
+	final Action getLastAction()
+	{
+		return lastAction;
+	}
+	
+	final boolean isLastActionSuccessful()
+	{
+		return lastActionSuccessful;
+	}
+	
 	final int getPlaceMineCooldown()
 	{
 		return placeMineCooldown;
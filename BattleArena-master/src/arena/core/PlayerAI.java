@@ -1,5 +1,8 @@
 package arena.core;
 
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
 /**
  * The <code>PlayerAI</code> class represents the base class for all artificial intelligence agents for the Battle Arena game.
  * All AI agents inherit from this class and extends its {@link #getNextAction(GameState, GameUtility)} method to define
@@ -20,19 +23,17 @@ public abstract class PlayerAI
 	 * <pre>
 	 * public class RandomAI extends PlayerAI
 	 * {
-	 *	private final Random rand;
 	 *	private final Action[] actions;
 	 *
 	 *	public RandomAI()
 	 *	{
-	 *		rand = new Random();
 	 *		actions = Action.values();
 	 *	}
 	 *
 	 *	&#64;Override
 	 *	protected Action getNextAction(GameState gameState, GameUtility gameUtility)
 	 *	{
-	 *		return actions[rand.nextInt(actions.length)];
+	 *		return actions[gameUtility.randomInt(actions.length)];
 	 *	}
 	 * }
 	 * </pre>
@@ -45,15 +46,76 @@ public abstract class PlayerAI
 	 */
 	protected abstract Action getNextAction(GameState gameState, GameUtility gameUtility);
 	
+	private final Action measureNextAction(GameState gameState, GameUtility gameUtility, long[] measurement)
+	{
+		long startBytes = AgentMetrics.getAllocatedBytes();
+		long startTime = System.nanoTime();
+		Action action = getNextAction(gameState, gameUtility);
+		measurement[0] = System.nanoTime() - startTime;
+		measurement[1] = (startBytes >= 0) ? AgentMetrics.getAllocatedBytes() - startBytes : -1;
+		return action;
+	}
+	
+	// Counts, measures and logs a turn lost to the turn timeout, whether the agent overran it now or in an earlier turn
+	private final void forfeitTurn(Game game, Player player, AgentMetrics metrics)
+	{
+		game.countTimeout();
+		if(metrics != null)
+			metrics.recordTimeout(game.getTurnTimeoutNanos());
+		
+		EventLog eventLog = game.getEventLog();
+		if(eventLog.isEnabled(EventLog.Level.Rounds))
+			eventLog.logTimeout(game.getRound(), player.getName(), getClass().getSimpleName(), game.getTurnTimeoutNanos());
+	}
+	
 	final void playRound(Game game, Player player, Player otherPlayer)
 	{
+		player.setLastAction(null, false);
 		if(player.isDead() || player.isDestroyed())
 			return;
 		
 		GameState gameState = new GameState(game, player, otherPlayer);
-		GameUtility gameUtility = new GameUtility(gameState);
+		AgentMetrics metrics = game.getAgentMetrics(player);
+		GameUtility gameUtility = new GameUtility(gameState, metrics);
 		
-		Action action = getNextAction(gameState, gameUtility);
+		// Measured on the thread that decides, the values are only read once the decision is over
+		long[] measurement = (metrics != null) ? new long[2] : null;
+		Supplier<Action> decision = () -> (measurement != null) ? measureNextAction(gameState, gameUtility, measurement) : getNextAction(gameState, gameUtility);
+		
+		Action action;
+		AgentWatchdog watchdog = game.getWatchdog(player);
+		if(watchdog != null && watchdog.isAbandoned())
+		{
+			// The agent is still busy with the turn it was abandoned in, so it forfeits the rest of the match
+			action = Action.NoAction;
+			forfeitTurn(game, player, metrics);
+		}
+		else try
+		{
+			action = (watchdog != null) ? watchdog.decide(decision, game.getTurnTimeoutNanos()) : decision.get();
+			if(metrics != null)
+				metrics.recordTurn(measurement[0], measurement[1]);
+		}
+		catch(TimeoutException e)
+		{
+			// An abandoned decision may still be reading the state while the game goes on
+			if(watchdog.isAbandoned())
+				gameState.expire();
+			
+			action = Action.NoAction;
+			forfeitTurn(game, player, metrics);
+		}
+		catch(RuntimeException e)
+		{
+			// A faulty agent only loses its turn, the match and the tournament playing it go on
+			action = Action.NoAction;
+			if(metrics != null)
+				metrics.recordError();
+			
+			EventLog eventLog = game.getEventLog();
+			if(eventLog.isEnabled(EventLog.Level.Rounds))
+				eventLog.logError(game.getRound(), player.getName(), getClass().getSimpleName(), e);
+		}
 		
 		if(action == null)
 			action = Action.NoAction;
@@ -117,14 +179,10 @@ public abstract class PlayerAI
 				throw new IllegalStateException("Unknown action: " + action);
 		}
 		
-		// Logging what happened
-		if(successful)
-		{
-			System.out.println("\t[" + player.getName() + " - " + this.getClass().getSimpleName() + "] Succesfully performed " + action.toString());
-		}
-		else
-		{
-			System.out.println("\t[" + player.getName() + " - " + this.getClass().getSimpleName() + "] Failed to perform " + action.toString());
-		}
+		player.setLastAction(action, successful);
+		
+		EventLog eventLog = game.getEventLog();
+		if(eventLog.isEnabled(EventLog.Level.Actions))
+			eventLog.logAction(game.getRound(), player.getName(), getClass().getSimpleName(), action, successful);
 	}
 }
\ No newline at end of file
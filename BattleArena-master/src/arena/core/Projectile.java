@@ -1,13 +1,11 @@
 package arena.core;
 
-import javafx.scene.paint.Color;
-
 final class Projectile extends Entity
 {
 	private final int speedX;
 	private final int speedY;
 	private final Player player;
-	private final Color color;
+	private final double hue;
 	
 	Projectile(Map map, int x, int y, int speedX, int speedY, Player player)
 	{
@@ -15,7 +13,7 @@ final class Projectile extends Entity
 		this.player = player;
 		this.speedX = speedX;
 		this.speedY = speedY;
-		color = player.getColor();
+		hue = player.getHue();
 	}
 	
 	boolean isOwner(Player player)
@@ -49,9 +47,9 @@ final class Projectile extends Entity
 		}
 	}
 	
-	final Color getColor()
+	final double getHue()
 	{
-		return color;
+		return hue;
 	}
 
 	@Override
@@ -0,0 +1,359 @@
+package arena.core;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import arena.core.GameState.EntityType;
+
+/**
+ * The <code>ReplayArchive</code> class reads many replays packed into a single file, so that analytics over thousands of matches do not
+ * pay for opening, reading and parsing one file per match. All numbers are big-endian.
+ *
+ * <pre>
+ * archive := MAGIC:int VERSION:short replay* index trailer
+ * index   := (offset:long length:int)*
+ * trailer := indexOffset:long replayCount:int MAGIC:int
+ * </pre>
+ *
+ * <p>
+ * Each replay is a complete replay file as described by {@link ReplayFormat}. The archive is memory-mapped in segments of up to
+ * {@link #MAX_SEGMENT_SIZE} bytes that never split a replay, and {@link #getReplay(int)} reads a replay straight from its segment: nothing
+ * is copied onto the heap, and the operating system pages in only what a scan actually touches.
+ * </p>
+ *
+ * <p>
+ * To pack a directory of replays into an archive, or print the statistics of an archive, use the command line:
+ * </p>
+ * <pre>
+ * java arena.core.ReplayArchive pack matches.archive replays
+ * java arena.core.ReplayArchive stats matches.archive
+ * </pre>
+ *
+ * <p>
+ * Tournaments can also record straight into an archive, see {@link Tournament#setReplayArchive(Path)}.
+ * </p>
+ *
+ * @author ERAU AI Club
+ */
+public final class ReplayArchive
+{
+	static final int MAGIC = 0x42415241; // "BARA"
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 6;
+	static final int INDEX_ENTRY_SIZE = 12;
+	static final int TRAILER_SIZE = 16;
+	static final int MAX_SEGMENT_SIZE = 1 << 30;
+	
+	private static final double WALL_DENSITY_BUCKET_SIZE = 0.02;
+	
+	private final MappedByteBuffer[] segments;
+	private final int[] replaySegments;
+	private final int[] replayOffsets; // relative to the segment
+	private final int[] replayLengths;
+	
+	private ReplayArchive(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		if(size < HEADER_SIZE + TRAILER_SIZE)
+			throw new IOException("Not a replay archive.");
+		
+		ByteBuffer header = read(channel, 0, HEADER_SIZE);
+		ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+		if(header.getInt() != MAGIC || trailer.getInt(TRAILER_SIZE - 4) != MAGIC)
+			throw new IOException("Not a replay archive, or the archive was not closed.");
+		
+		short version = header.getShort();
+		if(version != VERSION)
+			throw new IOException("Unsupported replay archive version: " + version);
+		
+		long indexOffset = trailer.getLong();
+		int replayCount = trailer.getInt();
+		if(indexOffset + (long) replayCount * INDEX_ENTRY_SIZE != size - TRAILER_SIZE)
+			throw new IOException("Broken replay archive index.");
+		
+		// Group consecutive replays into segments as big as possible
+		ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) replayCount * INDEX_ENTRY_SIZE);
+		replaySegments = new int[replayCount];
+		replayOffsets = new int[replayCount];
+		replayLengths = new int[replayCount];
+		List<MappedByteBuffer> segmentList = new ArrayList<>();
+		long segmentStart = HEADER_SIZE;
+		long segmentEnd = HEADER_SIZE;
+		for(int i = 0; i < replayCount; i++)
+		{
+			long offset = index.getLong();
+			int length = index.getInt();
+			if(offset < segmentEnd || length < 0 || length > MAX_SEGMENT_SIZE || offset + length > indexOffset)
+				throw new IOException("Broken replay archive index at replay " + i);
+			
+			if(offset + length - segmentStart > MAX_SEGMENT_SIZE)
+			{
+				segmentList.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+				segmentStart = offset;
+			}
+			
+			replaySegments[i] = segmentList.size();
+			replayOffsets[i] = (int) (offset - segmentStart);
+			replayLengths[i] = length;
+			segmentEnd = offset + length;
+		}
+		segmentList.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+		segments = segmentList.toArray(new MappedByteBuffer[0]);
+	}
+	
+	private static final ByteBuffer read(FileChannel channel, long position, int size) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of replay archive.");
+		}
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * Maps the specified archive into memory. The mapping stays valid after the file is closed, until the archive is garbage collected.
+	 */
+	static final ReplayArchive open(Path path) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return new ReplayArchive(channel);
+		}
+	}
+	
+	final int getReplayCount()
+	{
+		return replayLengths.length;
+	}
+	
+	/**
+	 * Returns a reader of the specified replay, reading directly from the mapped archive. Readers of different replays can be used from
+	 * different threads.
+	 */
+	final ReplayReader getReplay(int replay) throws IOException
+	{
+		ByteBuffer segment = segments[replaySegments[replay]].duplicate();
+		segment.position(replayOffsets[replay]);
+		segment.limit(replayOffsets[replay] + replayLengths[replay]);
+		return new ReplayReader(segment);
+	}
+	
+	/**
+	 * Packs every replay file of the specified directory, in file name order, into a new archive. Files that are not valid replays are skipped.
+	 *
+	 * @return the number of packed replays
+	 */
+	static final int pack(Path archive, Path replayDirectory, PrintStream err) throws IOException
+	{
+		List<Path> replayFiles;
+		try(Stream<Path> files = Files.list(replayDirectory))
+		{
+			replayFiles = files.filter(file -> file.getFileName().toString().endsWith(ReplayFormat.FILE_EXTENSION)).sorted().collect(Collectors.toList());
+		}
+		
+		try(ReplayArchiveWriter archiveWriter = new ReplayArchiveWriter(archive))
+		{
+			for(Path replayFile : replayFiles)
+			{
+				ByteBuffer replay = ByteBuffer.wrap(Files.readAllBytes(replayFile));
+				try
+				{
+					new ReplayReader(replay);
+				}
+				catch(IOException | RuntimeException e)
+				{
+					err.println("Skipped " + replayFile + ": " + e.getMessage());
+					continue;
+				}
+				archiveWriter.append(replay);
+			}
+			return archiveWriter.getReplayCount();
+		}
+	}
+	
+	/**
+	 * Prints the results of every agent in the archive: wins, losses and draws, what killed it, and its win rate by wall density of the map.
+	 */
+	final void printStatistics(PrintStream out) throws IOException
+	{
+		TreeMap<String, AgentStatistics> agents = new TreeMap<>();
+		int bucketCount = (int) Math.ceil(1 / WALL_DENSITY_BUCKET_SIZE) + 1;
+		int unfinished = 0;
+		
+		for(int i = 0; i < getReplayCount(); i++)
+		{
+			ReplayReader replay = getReplay(i);
+			HeadlessMatch.Outcome outcome = replay.getOutcome();
+			if(outcome == null)
+			{
+				unfinished++;
+				continue;
+			}
+			
+			// Only the header, the trailer and the first keyframe are decoded
+			ReplayFrame map = replay.getFrame(0);
+			int walls = 0;
+			for(int y = 0; y < map.getHeight(); y++)
+			{
+				for(int x = 0; x < map.getWidth(); x++)
+				{
+					if(map.getEntityType(x, y) == EntityType.Wall)
+						walls++;
+				}
+			}
+			int bucket = (int) (walls / (double) (map.getWidth() * map.getHeight()) / WALL_DENSITY_BUCKET_SIZE);
+			
+			for(int player = 0; player < 2; player++)
+			{
+				String name = ReplayFormat.getSimpleName(replay.getClassName(player));
+				AgentStatistics agent = agents.computeIfAbsent(name, key -> new AgentStatistics(bucketCount));
+				agent.bucketMatches[bucket]++;
+				
+				if(outcome == HeadlessMatch.Outcome.Draw)
+				{
+					agent.draws++;
+				}
+				else if((outcome == HeadlessMatch.Outcome.Player1Win) == (player == 0))
+				{
+					agent.wins++;
+					agent.bucketWins[bucket]++;
+				}
+				else
+				{
+					agent.losses++;
+				}
+				
+				EntityType deathCause = replay.getDeathCause(player);
+				if(deathCause != null)
+					agent.deathCauses[deathCause.ordinal()]++;
+			}
+		}
+		
+		out.println("Replays: " + getReplayCount() + ((unfinished > 0) ? " (" + unfinished + " unfinished, ignored)" : ""));
+		out.println();
+		
+		// Deaths, only for the causes that killed someone
+		EntityType[] entityTypes = EntityType.values();
+		int[] deaths = new int[entityTypes.length];
+		for(AgentStatistics agent : agents.values())
+		{
+			for(int cause = 0; cause < entityTypes.length; cause++)
+				deaths[cause] += agent.deathCauses[cause];
+		}
+		StringBuilder header = new StringBuilder(String.format("%-16s %6s %6s %6s", "Agent", "W", "L", "D"));
+		for(int cause = 0; cause < entityTypes.length; cause++)
+		{
+			if(deaths[cause] > 0)
+				header.append(String.format(" %13s", "by " + entityTypes[cause]));
+		}
+		out.println(header);
+		for(Entry<String, AgentStatistics> entry : agents.entrySet())
+		{
+			AgentStatistics agent = entry.getValue();
+			StringBuilder row = new StringBuilder(String.format("%-16s %6d %6d %6d", entry.getKey(), agent.wins, agent.losses, agent.draws));
+			for(int cause = 0; cause < entityTypes.length; cause++)
+			{
+				if(deaths[cause] > 0)
+					row.append(String.format(" %13d", agent.deathCauses[cause]));
+			}
+			out.println(row);
+		}
+		
+		// Win rates, only for the wall densities that were played
+		out.println();
+		int[] bucketMatches = new int[bucketCount];
+		for(AgentStatistics agent : agents.values())
+		{
+			for(int bucket = 0; bucket < bucketCount; bucket++)
+				bucketMatches[bucket] += agent.bucketMatches[bucket];
+		}
+		header = new StringBuilder(String.format("%-16s", "Wins by walls"));
+		for(int bucket = 0; bucket < bucketCount; bucket++)
+		{
+			if(bucketMatches[bucket] > 0)
+				header.append(String.format(" %9s", String.format("%.0f-%.0f%%", bucket * WALL_DENSITY_BUCKET_SIZE * 100, (bucket + 1) * WALL_DENSITY_BUCKET_SIZE * 100)));
+		}
+		out.println(header);
+		for(Entry<String, AgentStatistics> entry : agents.entrySet())
+		{
+			AgentStatistics agent = entry.getValue();
+			StringBuilder row = new StringBuilder(String.format("%-16s", entry.getKey()));
+			for(int bucket = 0; bucket < bucketCount; bucket++)
+			{
+				if(bucketMatches[bucket] == 0)
+					continue;
+				
+				String cell = (agent.bucketMatches[bucket] == 0) ? "-" : String.format("%.0f%%", 100.0 * agent.bucketWins[bucket] / agent.bucketMatches[bucket]);
+				row.append(String.format(" %9s", cell));
+			}
+			out.println(row);
+		}
+	}
+	
+	private static final class AgentStatistics
+	{
+		private int wins;
+		private int losses;
+		private int draws;
+		private final int[] deathCauses = new int[EntityType.values().length];
+		private final int[] bucketMatches;
+		private final int[] bucketWins;
+		
+		AgentStatistics(int bucketCount)
+		{
+			bucketMatches = new int[bucketCount];
+			bucketWins = new int[bucketCount];
+		}
+	}
+	
+	/**
+	 * Packs replays or prints statistics from the command line, in the format of:
+	 *
+	 * <pre>
+	 * java arena.core.ReplayArchive pack &lt;archive&gt; &lt;replayDirectory&gt;
+	 * java arena.core.ReplayArchive stats &lt;archive&gt;
+	 * </pre>
+	 *
+	 * @param args - the command, followed by its arguments
+	 *
+	 * @throws IOException when an archive or a replay cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length == 3 && args[0].equals("pack"))
+		{
+			int count = pack(Paths.get(args[1]), Paths.get(args[2]), System.err);
+			System.out.println("Packed " + count + " replays into " + args[1]);
+		}
+		else if(args.length == 2 && args[0].equals("stats"))
+		{
+			long startTime = System.nanoTime();
+			ReplayArchive archive = open(Paths.get(args[1]));
+			archive.printStatistics(System.out);
+			double seconds = (System.nanoTime() - startTime) / 1e9;
+			System.out.println();
+			System.out.println("Scanned " + archive.getReplayCount() + " replays in " + String.format("%.2f", seconds) + " seconds");
+		}
+		else
+		{
+			System.err.println("Usage: ReplayArchive pack <archive> <replayDirectory>");
+			System.err.println("       ReplayArchive stats <archive>");
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package arena.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Packs replays into an archive as described by {@link ReplayArchive}. Replays are appended as complete byte arrays, usually recorded
+ * into memory with {@link ReplayWriter}, and the index is written when the archive is closed.
+ *
+ * <p>
+ * {@link #append(ByteBuffer)} is synchronized, so the workers of a tournament can share one archive.
+ * </p>
+ */
+final class ReplayArchiveWriter implements Closeable
+{
+	private final FileChannel channel;
+	private long position;
+	
+	private int replayCount;
+	private long[] replayOffsets = new long[256];
+	private int[] replayLengths = new int[256];
+	
+	ReplayArchiveWriter(Path path) throws IOException
+	{
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		
+		ByteBuffer header = ByteBuffer.allocate(ReplayArchive.HEADER_SIZE);
+		header.putInt(ReplayArchive.MAGIC);
+		header.putShort(ReplayArchive.VERSION);
+		header.flip();
+		write(header);
+	}
+	
+	/**
+	 * Appends the replay held by the remaining bytes of the specified buffer.
+	 */
+	final synchronized void append(ByteBuffer replay) throws IOException
+	{
+		if(replay.remaining() > ReplayArchive.MAX_SEGMENT_SIZE)
+			throw new IOException("Replay too big for an archive: " + replay.remaining() + " bytes");
+		
+		if(replayCount == replayOffsets.length)
+		{
+			replayOffsets = Arrays.copyOf(replayOffsets, replayCount * 2);
+			replayLengths = Arrays.copyOf(replayLengths, replayCount * 2);
+		}
+		replayOffsets[replayCount] = position;
+		replayLengths[replayCount] = replay.remaining();
+		replayCount++;
+		
+		write(replay);
+	}
+	
+	final synchronized int getReplayCount()
+	{
+		return replayCount;
+	}
+	
+	private final void write(ByteBuffer buffer) throws IOException
+	{
+		while(buffer.hasRemaining())
+			position += channel.write(buffer);
+	}
+	
+	@Override
+	public final synchronized void close() throws IOException
+	{
+		try
+		{
+			long indexOffset = position;
+			ByteBuffer index = ByteBuffer.allocate(replayCount * ReplayArchive.INDEX_ENTRY_SIZE + ReplayArchive.TRAILER_SIZE);
+			for(int i = 0; i < replayCount; i++)
+			{
+				index.putLong(replayOffsets[i]);
+				index.putInt(replayLengths[i]);
+			}
+			index.putLong(indexOffset);
+			index.putInt(replayCount);
+			index.putInt(ReplayArchive.MAGIC);
+			index.flip();
+			write(index);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package arena.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import arena.core.GameState.EntityType;
+
+/**
+ * Layout of a replay file. All numbers are big-endian.
+ *
+ * <pre>
+ * header   := MAGIC:int VERSION:short seed:long width:short height:short stormMaxSize:short p1Class:string p2Class:string
+ * record   := round | keyframe | end
+ * round    := RECORD_ROUND roundInfo changeCount:varint change*
+ * keyframe := RECORD_KEYFRAME roundInfo cellCode:byte[width * height]
+ * end      := RECORD_END outcome:byte rounds:short
+ * roundInfo:= round:short stormSize:short player player
+ * player   := action:byte successful:byte health:byte
+ * change   := cellGap:varint cellCode:byte
+ * footer   := keyframeCount:int (round:short offset:long)*
+ * trailer  := footerOffset:long rounds:short outcome:byte deathCause:byte deathCause:byte MAGIC:int
+ * </pre>
+ *
+ * <p>
+ * The header is followed by one record per round, starting with round 0. Every {@link #KEYFRAME_INTERVAL} rounds the record is a keyframe
+ * holding every cell, otherwise it only lists the cells whose code changed since the previous round, as the gap from the previous listed
+ * cell (cells are listed in ascending <code>y * width + x</code> order, the first gap is from -1). The action is the {@link Action}
+ * ordinal, or {@link #NO_ACTION} when the agent did not play.
+ * </p>
+ *
+ * <p>
+ * The footer lists the offset of every keyframe, and the fixed-size trailer at the very end of the file points to the footer, so that a
+ * reader can jump to any round by decoding at most one keyframe and {@link #KEYFRAME_INTERVAL}-1 rounds. The outcome is the
+ * {@link HeadlessMatch.Outcome} ordinal, or {@link #NO_OUTCOME} when the match was not finished. The death cause of each player is the
+ * {@link EntityType} ordinal of what killed it, or {@link #NO_DEATH_CAUSE} when it survived. Since the trailer alone summarizes the
+ * match, analytics over many replays never need to decode the rounds.
+ * </p>
+ *
+ * <p>
+ * A cell code packs the type of the entity shown in the cell with who owns it (players and projectiles) and where it faces (players).
+ * </p>
+ */
+final class ReplayFormat
+{
+	static final int MAGIC = 0x42415250; // "BARP"
+	static final short VERSION = 3;
+	static final String FILE_EXTENSION = ".replay";
+	static final int KEYFRAME_INTERVAL = 20;
+	static final int TRAILER_SIZE = 17;
+	
+	static final byte RECORD_ROUND = 1;
+	static final byte RECORD_END = 2;
+	static final byte RECORD_KEYFRAME = 3;
+	
+	static final byte NO_ACTION = -1;
+	static final byte NO_OUTCOME = -1;
+	static final byte NO_DEATH_CAUSE = -1;
+	
+	static final int CELL_TYPE_MASK = 0x07;
+	static final int CELL_OWNER_PLAYER2 = 0x08;
+	static final int CELL_FACING_LEFT = 0x10;
+	
+	private static final EntityType[] ENTITY_TYPES = EntityType.values();
+	
+	private ReplayFormat()
+	{
+	}
+	
+	static final byte encodeCell(Entity entity, Player player1)
+	{
+		int code = Entity.getEntityType(entity).ordinal();
+		if(entity instanceof Player)
+		{
+			Player player = (Player) entity;
+			if(player != player1)
+				code |= CELL_OWNER_PLAYER2;
+			if(player.getXScaleMultiplier() < 0)
+				code |= CELL_FACING_LEFT;
+		}
+		else if(entity instanceof Projectile)
+		{
+			if(!((Projectile) entity).isOwner(player1))
+				code |= CELL_OWNER_PLAYER2;
+		}
+		return (byte) code;
+	}
+	
+	static final EntityType getCellType(byte code)
+	{
+		return ENTITY_TYPES[code & CELL_TYPE_MASK];
+	}
+	
+	/**
+	 * Returns whether {@link #encodeCell(Entity, Player)} can return the specified code: its type bits name an entity type, only players
+	 * and projectiles have an owner, and only players face left.
+	 */
+	static final boolean isValidCell(byte code)
+	{
+		int type = code & CELL_TYPE_MASK;
+		if(type >= ENTITY_TYPES.length)
+			return false;
+		
+		EntityType entityType = ENTITY_TYPES[type];
+		if(isCellOwnedByPlayer2(code) && entityType != EntityType.Player && entityType != EntityType.Projectile)
+			return false;
+		return !isCellFacingLeft(code) || entityType == EntityType.Player;
+	}
+	
+	static final byte encodeDeathCause(EntityType cause)
+	{
+		return (cause == null) ? NO_DEATH_CAUSE : (byte) cause.ordinal();
+	}
+	
+	static final EntityType decodeDeathCause(byte cause)
+	{
+		return (cause == NO_DEATH_CAUSE) ? null : ENTITY_TYPES[cause];
+	}
+	
+	static final boolean isCellOwnedByPlayer2(byte code)
+	{
+		return (code & CELL_OWNER_PLAYER2) != 0;
+	}
+	
+	static final boolean isCellFacingLeft(byte code)
+	{
+		return (code & CELL_FACING_LEFT) != 0;
+	}
+	
+	/**
+	 * Returns the name a recorded match is saved under, for example <code>SimpleAI-vs-RandomAI-42.replay</code>.
+	 */
+	static final String getFileName(String p1ClassName, String p2ClassName, long seed)
+	{
+		return getSimpleName(p1ClassName) + "-vs-" + getSimpleName(p2ClassName) + "-" + seed + FILE_EXTENSION;
+	}
+	
+	static final String getSimpleName(String className)
+	{
+		return className.substring(className.lastIndexOf('.') + 1);
+	}
+	
+	static final void putVarInt(ByteBuffer buffer, int value)
+	{
+		while((value & ~0x7F) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	static final int getVarInt(ByteBuffer buffer)
+	{
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if(b >= 0)
+				return value;
+		}
+		throw new BufferUnderflowException();
+	}
+	
+	static final void putString(ByteBuffer buffer, String value)
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+	
+	static final String getString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
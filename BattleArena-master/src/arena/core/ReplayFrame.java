@@ -0,0 +1,202 @@
+package arena.core;
+
+import arena.core.GameState.EntityType;
+
+/**
+ * An immutable picture of a match at the end of a round: the code of every cell (see {@link ReplayFormat}) and what the players did.
+ * Frames are read from a replay by {@link ReplayReader}, or captured from a running {@link Game}, and are what {@link ArenaGUI} draws.
+ *
+ * <p>
+ * The frames a {@link GameSimulation} publishes only hold the cells that changed since its previous frame, so that capturing and drawing
+ * a round costs what the round changed rather than the size of the map.
+ * </p>
+ */
+final class ReplayFrame
+{
+	private static final Action[] ACTIONS = Action.values();
+	
+	private final String[] classNames;
+	private final int width;
+	private final int height;
+	private final int round;
+	private final int stormSize;
+	private final int stormMaxSize;
+	private final byte[] cells; // the code of every cell, null when the frame only holds the changed cells
+	private final int[] changedCells; // the indices (y * width + x) of the cells that changed, null when the frame holds every cell
+	private final byte[] changedCodes;
+	private final byte[] actions;
+	private final boolean[] successful;
+	private final int[] health;
+	
+	ReplayFrame(String[] classNames, int width, int height, int round, int stormSize, int stormMaxSize, byte[] cells, byte[] actions,
+				boolean[] successful, int[] health)
+	{
+		this(classNames, width, height, round, stormSize, stormMaxSize, cells, null, null, actions, successful, health);
+	}
+	
+	private ReplayFrame(String[] classNames, int width, int height, int round, int stormSize, int stormMaxSize, byte[] cells,
+						int[] changedCells, byte[] changedCodes, byte[] actions, boolean[] successful, int[] health)
+	{
+		this.classNames = classNames;
+		this.width = width;
+		this.height = height;
+		this.round = round;
+		this.stormSize = stormSize;
+		this.stormMaxSize = stormMaxSize;
+		this.cells = cells;
+		this.changedCells = changedCells;
+		this.changedCodes = changedCodes;
+		this.actions = actions;
+		this.successful = successful;
+		this.health = health;
+	}
+	
+	/**
+	 * Captures the current state of the game.
+	 */
+	static final ReplayFrame capture(Game game)
+	{
+		Map map = game.getMap();
+		byte[] cells = new byte[map.getWidth() * map.getHeight()];
+		for(int y = 0; y < map.getHeight(); y++)
+		{
+			for(int x = 0; x < map.getWidth(); x++)
+			{
+				cells[y * map.getWidth() + x] = ReplayFormat.encodeCell(map.getEntity(x, y), game.getPlayer1());
+			}
+		}
+		
+		return capture(game, cells, null, null);
+	}
+	
+	/**
+	 * Captures the current state of the game, but only the specified cells, which the caller knows to be the only ones that changed since
+	 * its previous frame. The frame keeps the arrays.
+	 *
+	 * @param changedCells - the indices (y * width + x) of the cells that changed
+	 * @param changedCodes - the current code of each of these cells
+	 */
+	static final ReplayFrame captureChanges(Game game, int[] changedCells, byte[] changedCodes)
+	{
+		return capture(game, null, changedCells, changedCodes);
+	}
+	
+	private static final ReplayFrame capture(Game game, byte[] cells, int[] changedCells, byte[] changedCodes)
+	{
+		Map map = game.getMap();
+		Player player1 = game.getPlayer1();
+		Player player2 = game.getPlayer2();
+		
+		String[] classNames = { game.getAgent1().getClass().getName(), game.getAgent2().getClass().getName() };
+		byte[] actions = { encodeAction(player1.getLastAction()), encodeAction(player2.getLastAction()) };
+		boolean[] successful = { player1.isLastActionSuccessful(), player2.isLastActionSuccessful() };
+		int[] health = { player1.getHealth(), player2.getHealth() };
+		return new ReplayFrame(classNames, map.getWidth(), map.getHeight(), game.getRound(), map.getStormSize(), map.getStormMaxSize(),
+							   cells, changedCells, changedCodes, actions, successful, health);
+	}
+	
+	static final byte encodeAction(Action action)
+	{
+		return (action == null) ? ReplayFormat.NO_ACTION : (byte) action.ordinal();
+	}
+	
+	/**
+	 * Returns the fully qualified class name of the agent playing the specified player (0 for the 1st player, 1 for the 2nd).
+	 */
+	final String getClassName(int player)
+	{
+		return classNames[player];
+	}
+	
+	final int getWidth()
+	{
+		return width;
+	}
+	
+	final int getHeight()
+	{
+		return height;
+	}
+	
+	final int getRound()
+	{
+		return round;
+	}
+	
+	final int getRoundsTillNextStormAdvance()
+	{
+		return Game.ROUND_PER_STORM_ADVANCE - (round % Game.ROUND_PER_STORM_ADVANCE);
+	}
+	
+	final int getStormSize()
+	{
+		return stormSize;
+	}
+	
+	final int getStormMaxSize()
+	{
+		return stormMaxSize;
+	}
+	
+	/**
+	 * Returns the code of the specified cell. Only frames that hold every cell can tell.
+	 */
+	final byte getCell(int x, int y)
+	{
+		if(cells == null)
+			throw new IllegalStateException("The frame only holds the cells that changed.");
+		return cells[y * width + x];
+	}
+	
+	/**
+	 * Returns the number of cells that changed since the previous frame, or that of every cell when the frame holds them all.
+	 */
+	final int getChangedCellCount()
+	{
+		return (changedCells == null) ? cells.length : changedCells.length;
+	}
+	
+	/**
+	 * Returns the index (y * width + x) of the specified changed cell, from 0 to {@link #getChangedCellCount()} excluded.
+	 */
+	final int getChangedCell(int index)
+	{
+		return (changedCells == null) ? index : changedCells[index];
+	}
+	
+	/**
+	 * Returns the code of the specified changed cell, from 0 to {@link #getChangedCellCount()} excluded.
+	 */
+	final byte getChangedCellCode(int index)
+	{
+		return (changedCells == null) ? cells[index] : changedCodes[index];
+	}
+	
+	final EntityType getEntityType(int x, int y)
+	{
+		return ReplayFormat.getCellType(getCell(x, y));
+	}
+	
+	/**
+	 * Returns the action the specified player performed this round, or null if it did not play.
+	 */
+	final Action getAction(int player)
+	{
+		return (actions[player] == ReplayFormat.NO_ACTION) ? null : ACTIONS[actions[player]];
+	}
+	
+	final boolean isActionSuccessful(int player)
+	{
+		return successful[player];
+	}
+	
+	final int getHealth(int player)
+	{
+		return health[player];
+	}
+	
+	final boolean isDead(int player)
+	{
+		return health[player] <= 0;
+	}
+}
@@ -0,0 +1,204 @@
+package arena.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import arena.core.GameState.EntityType;
+
+/**
+ * Reads a replay written by {@link ReplayWriter}. Any round can be requested in any order: the reader starts from the closest keyframe
+ * at or before the round and applies the rounds in between, so a seek never decodes more than {@link ReplayFormat#KEYFRAME_INTERVAL} records.
+ * Reading forward one round at a time, like a playback does, only decodes the next record.
+ *
+ * <p>
+ * The reader works on a {@link ByteBuffer}, usually the memory-mapped file, and is not thread-safe.
+ * </p>
+ */
+final class ReplayReader
+{
+	private static final HeadlessMatch.Outcome[] OUTCOMES = HeadlessMatch.Outcome.values();
+	
+	private final ByteBuffer buffer;
+	private final long seed;
+	private final int width;
+	private final int height;
+	private final int stormMaxSize;
+	private final String[] classNames;
+	private final int rounds;
+	private final HeadlessMatch.Outcome outcome;
+	private final EntityType[] deathCauses;
+	private final int[] keyframeRounds;
+	private final int[] keyframeOffsets;
+	
+	// State at the end of the round decoded last, the buffer is positioned at the next record
+	private int round = -1;
+	private int stormSize;
+	private final byte[] cells;
+	private final byte[] actions = new byte[2];
+	private final boolean[] successful = new boolean[2];
+	private final int[] health = new int[2];
+	
+	/**
+	 * Reads the replay held by the remaining bytes of the specified buffer. The buffer itself is left untouched.
+	 */
+	ReplayReader(ByteBuffer source) throws IOException
+	{
+		buffer = source.slice().order(ByteOrder.BIG_ENDIAN);
+		if(buffer.remaining() < 4 + ReplayFormat.TRAILER_SIZE || buffer.getInt() != ReplayFormat.MAGIC)
+			throw new IOException("Not a replay file.");
+		
+		short version = buffer.getShort();
+		if(version != ReplayFormat.VERSION)
+			throw new IOException("Unsupported replay version: " + version);
+		
+		seed = buffer.getLong();
+		width = buffer.getShort();
+		height = buffer.getShort();
+		stormMaxSize = buffer.getShort();
+		classNames = new String[] { ReplayFormat.getString(buffer), ReplayFormat.getString(buffer) };
+		cells = new byte[width * height];
+		
+		int trailer = buffer.limit() - ReplayFormat.TRAILER_SIZE;
+		if(buffer.getInt(trailer + ReplayFormat.TRAILER_SIZE - 4) != ReplayFormat.MAGIC)
+			throw new IOException("The replay has no index, it may be truncated.");
+		
+		int footerOffset = (int) buffer.getLong(trailer);
+		rounds = buffer.getShort(trailer + 8);
+		byte outcomeOrdinal = buffer.get(trailer + 10);
+		outcome = (outcomeOrdinal == ReplayFormat.NO_OUTCOME) ? null : OUTCOMES[outcomeOrdinal];
+		deathCauses = new EntityType[] { ReplayFormat.decodeDeathCause(buffer.get(trailer + 11)), ReplayFormat.decodeDeathCause(buffer.get(trailer + 12)) };
+		
+		int keyframeCount = buffer.getInt(footerOffset);
+		keyframeRounds = new int[keyframeCount];
+		keyframeOffsets = new int[keyframeCount];
+		for(int i = 0; i < keyframeCount; i++)
+		{
+			keyframeRounds[i] = buffer.getShort(footerOffset + 4 + i * 10);
+			keyframeOffsets[i] = (int) buffer.getLong(footerOffset + 4 + i * 10 + 2);
+		}
+		
+		if(keyframeCount == 0 || keyframeRounds[0] != 0)
+			throw new IOException("The replay does not start with a keyframe.");
+	}
+	
+	/**
+	 * Maps the specified replay file into memory and reads it.
+	 */
+	static final ReplayReader open(Path path) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return new ReplayReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	final long getSeed()
+	{
+		return seed;
+	}
+	
+	final int getWidth()
+	{
+		return width;
+	}
+	
+	final int getHeight()
+	{
+		return height;
+	}
+	
+	final String getClassName(int player)
+	{
+		return classNames[player];
+	}
+	
+	/**
+	 * Returns the last round of the replay.
+	 */
+	final int getRounds()
+	{
+		return rounds;
+	}
+	
+	/**
+	 * Returns how the match ended, or null if the recording stopped before the end.
+	 */
+	final HeadlessMatch.Outcome getOutcome()
+	{
+		return outcome;
+	}
+	
+	/**
+	 * Returns what killed the specified player (0 for the 1st player, 1 for the 2nd), or null if it survived.
+	 */
+	final EntityType getDeathCause(int player)
+	{
+		return deathCauses[player];
+	}
+	
+	/**
+	 * Returns the frame at the end of the specified round; round 0 is the generated map.
+	 *
+	 * @throws IllegalArgumentException when the round is not in the replay
+	 */
+	final ReplayFrame getFrame(int round)
+	{
+		seek(round);
+		return new ReplayFrame(classNames, width, height, round, stormSize, stormMaxSize, cells.clone(), actions.clone(), successful.clone(), health.clone());
+	}
+	
+	private final void seek(int targetRound)
+	{
+		if(targetRound < 0 || targetRound > rounds)
+			throw new IllegalArgumentException("Round not in range [0.." + rounds + "]: " + targetRound);
+		
+		// Restart from the closest keyframe, unless the decoded round is already on the way
+		int keyframe = Arrays.binarySearch(keyframeRounds, targetRound);
+		if(keyframe < 0)
+			keyframe = -keyframe - 2;
+		
+		if(round > targetRound || round < keyframeRounds[keyframe])
+		{
+			buffer.position(keyframeOffsets[keyframe]);
+			round = -1;
+		}
+		
+		while(round != targetRound)
+			readRecord();
+	}
+	
+	private final void readRecord()
+	{
+		byte tag = buffer.get();
+		if(tag != ReplayFormat.RECORD_ROUND && tag != ReplayFormat.RECORD_KEYFRAME)
+			throw new IllegalStateException("Unexpected replay record: " + tag);
+		
+		round = buffer.getShort();
+		stormSize = buffer.getShort();
+		for(int player = 0; player < 2; player++)
+		{
+			actions[player] = buffer.get();
+			successful[player] = buffer.get() != 0;
+			health[player] = buffer.get();
+		}
+		
+		if(tag == ReplayFormat.RECORD_KEYFRAME)
+		{
+			buffer.get(cells);
+			return;
+		}
+		
+		int changeCount = ReplayFormat.getVarInt(buffer);
+		int cell = -1;
+		for(int i = 0; i < changeCount; i++)
+		{
+			cell += ReplayFormat.getVarInt(buffer);
+			cells[cell] = buffer.get();
+		}
+	}
+}
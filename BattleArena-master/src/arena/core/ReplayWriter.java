@@ -0,0 +1,230 @@
+package arena.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Records a match into a replay file as described by {@link ReplayFormat}. The file is written sequentially through a single buffer,
+ * and each round only costs the cells the map reported as changed, so recording can be left on for every match.
+ *
+ * <p>
+ * Call {@link #writeHeader(Game)} once the map is generated, {@link #writeRound(Game)} after every tick and {@link #writeEnd(Game)}
+ * when the match is over. Closing the writer appends the keyframe index, even when the match was not finished.
+ * </p>
+ */
+final class ReplayWriter implements Closeable
+{
+	private static final int RECORD_HEADER_SIZE = 16;
+	private static final int CHANGE_MAX_SIZE = 6; // varint gap + code
+	
+	private final WritableByteChannel channel;
+	private ByteBuffer buffer;
+	private long flushedBytes;
+	private byte[] cellCodes;
+	private int[] changedCells;
+	private Map map;
+	private BitSet touchedCells; // tracked on the map from the header until the writer is closed
+	
+	private int keyframeCount;
+	private int[] keyframeRounds = new int[16];
+	private long[] keyframeOffsets = new long[16];
+	private int rounds;
+	private byte outcome = ReplayFormat.NO_OUTCOME;
+	private final byte[] deathCauses = { ReplayFormat.NO_DEATH_CAUSE, ReplayFormat.NO_DEATH_CAUSE };
+	
+	ReplayWriter(Path path) throws IOException
+	{
+		this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+	}
+	
+	/**
+	 * Writes into the specified channel, which is closed along with the writer.
+	 */
+	ReplayWriter(WritableByteChannel channel)
+	{
+		this.channel = channel;
+	}
+	
+	/**
+	 * Writes the header and round 0, the full starting map.
+	 */
+	final void writeHeader(Game game) throws IOException
+	{
+		Map map = game.getMap();
+		int cellCount = map.getWidth() * map.getHeight();
+		String p1ClassName = game.getAgent1().getClass().getName();
+		String p2ClassName = game.getAgent2().getClass().getName();
+		
+		// A buffer always fits the biggest record, which is a round where every cell changed
+		int maxRecordSize = RECORD_HEADER_SIZE + cellCount * CHANGE_MAX_SIZE;
+		int headerSize = 32 + 3 * (p1ClassName.length() + p2ClassName.length());
+		buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, maxRecordSize + headerSize));
+		cellCodes = new byte[cellCount];
+		changedCells = new int[cellCount];
+		this.map = map;
+		touchedCells = map.trackChangedCells();
+		
+		buffer.putInt(ReplayFormat.MAGIC);
+		buffer.putShort(ReplayFormat.VERSION);
+		buffer.putLong(game.getSeed());
+		buffer.putShort((short) map.getWidth());
+		buffer.putShort((short) map.getHeight());
+		buffer.putShort((short) map.getStormMaxSize());
+		ReplayFormat.putString(buffer, p1ClassName);
+		ReplayFormat.putString(buffer, p2ClassName);
+		
+		writeRound(game);
+	}
+	
+	/**
+	 * Writes the round that was just played.
+	 */
+	final void writeRound(Game game) throws IOException
+	{
+		Map map = game.getMap();
+		ensureRemaining(RECORD_HEADER_SIZE + cellCodes.length * CHANGE_MAX_SIZE);
+		
+		rounds = game.getRound();
+		boolean keyframe = (rounds % ReplayFormat.KEYFRAME_INTERVAL == 0);
+		if(keyframe)
+			addKeyframe(rounds, getPosition());
+		
+		buffer.put(keyframe ? ReplayFormat.RECORD_KEYFRAME : ReplayFormat.RECORD_ROUND);
+		buffer.putShort((short) rounds);
+		buffer.putShort((short) map.getStormSize());
+		writePlayer(game.getPlayer1());
+		writePlayer(game.getPlayer2());
+		
+		if(keyframe)
+		{
+			for(int cell = 0; cell < cellCodes.length; cell++)
+				cellCodes[cell] = ReplayFormat.encodeCell(map.getEntity(cell % map.getWidth(), cell / map.getWidth()), game.getPlayer1());
+			
+			touchedCells.clear();
+			buffer.put(cellCodes);
+			return;
+		}
+		
+		// Keep the touched cells whose code is really different
+		int changeCount = 0;
+		for(int cell = touchedCells.nextSetBit(0); cell >= 0; cell = touchedCells.nextSetBit(cell + 1))
+		{
+			byte code = ReplayFormat.encodeCell(map.getEntity(cell % map.getWidth(), cell / map.getWidth()), game.getPlayer1());
+			if(code != cellCodes[cell])
+			{
+				cellCodes[cell] = code;
+				changedCells[changeCount++] = cell;
+			}
+		}
+		touchedCells.clear();
+		
+		ReplayFormat.putVarInt(buffer, changeCount);
+		int previousCell = -1;
+		for(int i = 0; i < changeCount; i++)
+		{
+			int cell = changedCells[i];
+			ReplayFormat.putVarInt(buffer, cell - previousCell);
+			buffer.put(cellCodes[cell]);
+			previousCell = cell;
+		}
+	}
+	
+	private final void writePlayer(Player player)
+	{
+		buffer.put(ReplayFrame.encodeAction(player.getLastAction()));
+		buffer.put((byte) (player.isLastActionSuccessful() ? 1 : 0));
+		buffer.put((byte) player.getHealth());
+	}
+	
+	private final void addKeyframe(int round, long offset)
+	{
+		if(keyframeCount == keyframeRounds.length)
+		{
+			keyframeRounds = Arrays.copyOf(keyframeRounds, keyframeCount * 2);
+			keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+		}
+		keyframeRounds[keyframeCount] = round;
+		keyframeOffsets[keyframeCount] = offset;
+		keyframeCount++;
+	}
+	
+	/**
+	 * Writes the end of the match. Nothing else can be written afterwards.
+	 */
+	final void writeEnd(Game game) throws IOException
+	{
+		ensureRemaining(RECORD_HEADER_SIZE);
+		outcome = (byte) HeadlessMatch.getOutcome(game).ordinal();
+		rounds = game.getRound();
+		deathCauses[0] = ReplayFormat.encodeDeathCause(game.getPlayer1().getCauseOfDeath());
+		deathCauses[1] = ReplayFormat.encodeDeathCause(game.getPlayer2().getCauseOfDeath());
+		buffer.put(ReplayFormat.RECORD_END);
+		buffer.put(outcome);
+		buffer.putShort((short) rounds);
+	}
+	
+	private final void writeFooter() throws IOException
+	{
+		long footerOffset = getPosition();
+		ensureRemaining(4);
+		buffer.putInt(keyframeCount);
+		for(int i = 0; i < keyframeCount; i++)
+		{
+			ensureRemaining(10);
+			buffer.putShort((short) keyframeRounds[i]);
+			buffer.putLong(keyframeOffsets[i]);
+		}
+		
+		ensureRemaining(ReplayFormat.TRAILER_SIZE);
+		buffer.putLong(footerOffset);
+		buffer.putShort((short) rounds);
+		buffer.put(outcome);
+		buffer.put(deathCauses);
+		buffer.putInt(ReplayFormat.MAGIC);
+	}
+	
+	private final long getPosition()
+	{
+		return flushedBytes + buffer.position();
+	}
+	
+	private final void ensureRemaining(int size) throws IOException
+	{
+		if(buffer.remaining() < size)
+			flush();
+	}
+	
+	private final void flush() throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+			flushedBytes += channel.write(buffer);
+		buffer.clear();
+	}
+	
+	@Override
+	public final void close() throws IOException
+	{
+		try
+		{
+			if(buffer != null)
+			{
+				writeFooter();
+				flush();
+			}
+		}
+		finally
+		{
+			if(touchedCells != null)
+				map.untrackChangedCells(touchedCells);
+			channel.close();
+		}
+	}
+}
@@ -1,10 +1,15 @@
 package arena.core;
 
+/**
+ * The storm is not registered like other entities: the map only knows which cells it covers, see {@link Map#advanceStorm()}.
+ * A storm entity stands for the storm of one cell while it collides with something, or for the storm of every cell when returned
+ * by {@link Map#getEntity(int, int)}, so it never moves and is never destroyed.
+ */
 final class Storm extends Entity
 {
-	Storm(Map map, int x, int y)
+	Storm(Map map, int x, int y, int id)
 	{
-		super(map, x, y);
+		super(map, x, y, id);
 	}
 	
 	@Override
@@ -1,26 +1,25 @@
 package arena.core;
 
-import javafx.scene.effect.ColorAdjust;
+import arena.core.GameState.EntityType;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 
 final class Tile extends StackPane
 {
-	private Entity entity = null;
+	private byte cell = -1;
 	
 	private ImageView backgroundImageView;
 	private ImageView foregroundImageView;
-	private ColorAdjust colorAdjust;
 	private ImageDatabase imageDatabase;
 	
-	public Tile(ImageDatabase imageDatabase, Entity entity, int tileSize)
+	public Tile(ImageDatabase imageDatabase, int tileSize)
 	{
 		this.imageDatabase = imageDatabase;
 		setMinSize(tileSize, tileSize);
 		setMaxSize(tileSize, tileSize);
 		setPrefSize(tileSize, tileSize);
 		initializeImageViews(tileSize);
-		setEntity(entity);
+		setCell((byte) EntityType.Empty.ordinal());
 		getChildren().addAll(backgroundImageView, foregroundImageView);
 	}
 	
@@ -33,67 +32,54 @@ final class Tile extends StackPane
 		foregroundImageView = new ImageView();
 		foregroundImageView.setFitWidth(tileSize);
 		foregroundImageView.setFitHeight(tileSize);
-		colorAdjust = new ColorAdjust();
-		foregroundImageView.setEffect(colorAdjust);
 	}
 	
 	final void update()
 	{
 		backgroundImageView.setImage(imageDatabase.floor);
-		colorAdjust.setHue(0);
-		foregroundImageView.setScaleX(1);
 		
-		if(entity == null)
+		double ownerHue = ReplayFormat.isCellOwnedByPlayer2(cell) ? Game.PLAYER2_HUE : Game.PLAYER1_HUE;
+		switch(ReplayFormat.getCellType(cell))
 		{
-			foregroundImageView.setImage(null);
-		}
-		else
-		{
-			if(entity instanceof Player)
-			{
-				foregroundImageView.setImage(imageDatabase.player);
+			case Empty:
+				foregroundImageView.setImage(null);
+				break;
 				
-				Player player = (Player) entity; 
-				double hue = -1+2*(((player.getColor().getHue() + 180) % 360)/360);
-				colorAdjust.setHue(hue);
+			case Player:
+				foregroundImageView.setImage(imageDatabase.getPlayer(ownerHue, ReplayFormat.isCellFacingLeft(cell)));
+				break;
 				
-				foregroundImageView.setScaleX(player.getXScaleMultiplier());
-			}
-			else if(entity instanceof Wall)
-			{
+			case Wall:
 				foregroundImageView.setImage(imageDatabase.wall);
-			}
-			else if(entity instanceof Storm)
-			{
+				break;
+				
+			case Storm:
 				foregroundImageView.setImage(imageDatabase.storm);
-			}
-			else if(entity instanceof Projectile)
-			{
-				foregroundImageView.setImage(imageDatabase.projectile);
+				break;
 				
-				Projectile projectile = (Projectile) entity; 
-				double hue = -1+2*(((projectile.getColor().getHue() + 180) % 360)/360);
-				colorAdjust.setHue(hue);
-			}
-			else if(entity instanceof Mine)
-			{
+			case Projectile:
+				foregroundImageView.setImage(imageDatabase.getProjectile(ownerHue));
+				break;
+				
+			case Mine:
 				foregroundImageView.setImage(imageDatabase.mine);
-			}
-			else if(entity instanceof HealthPack)
-			{
+				break;
+				
+			case HealthPack:
 				foregroundImageView.setImage(imageDatabase.healthPack);
-			}
+				break;
 		}
 	}
-
-	final Entity getEntity()
-	{
-		return entity;
-	}
-
-	final void setEntity(Entity entity)
+	
+	/**
+	 * Shows the specified cell, encoded as described by {@link ReplayFormat}.
+	 */
+	final void setCell(byte cell)
 	{
-		this.entity = entity;
+		if(this.cell == cell)
+			return;
+		
+		this.cell = cell;
 		update();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package arena.core;
+
+import javafx.scene.Node;
+import javafx.scene.layout.GridPane;
+
+/**
+ * Draws the map as a grid of {@link Tile} nodes, one per cell. Simple, but every cell costs a few nodes of the scene graph, so it
+ * only suits small maps; see {@link CanvasMapView} for big ones.
+ */
+final class TileMapView implements MapView
+{
+	private final GridPane gridPane;
+	private final Tile[][] tiles;
+	
+	TileMapView(ImageDatabase imageDatabase, int mapWidth, int mapHeight, int pixelSize)
+	{
+		gridPane = new GridPane();
+		
+		tiles = new Tile[mapWidth][mapHeight];
+		for(int y = 0; y < mapHeight; y++)
+		{
+			for(int x = 0; x < mapWidth; x++)
+			{
+				Tile tile = new Tile(imageDatabase, pixelSize);
+				tiles[x][y] = tile;
+				gridPane.add(tile, x, y);
+			}
+		}
+	}
+	
+	@Override
+	public final Node getNode()
+	{
+		return gridPane;
+	}
+	
+	@Override
+	public final void setCell(int x, int y, byte cell)
+	{
+		tiles[x][y].setCell(cell);
+	}
+}
@@ -0,0 +1,620 @@
+package arena.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import arena.agents.ConnorAI;
+import arena.agents.ConnorNewAI;
+import arena.agents.DannyAI;
+import arena.agents.ExampleAI;
+import arena.agents.FrankymonkeyAI;
+import arena.agents.GageAI;
+import arena.agents.JakobAI;
+import arena.agents.KamrynAI;
+import arena.agents.LukeCAI;
+import arena.agents.RandomAI;
+import arena.agents.SimpleAI;
+
+/**
+ * The <code>Tournament</code> class plays a round-robin tournament between AI agents using {@link HeadlessMatch}.
+ * Every pairing of agents plays the same set of seeds twice, once from each side, and the matches are spread over a work-stealing pool
+ * so that the tournament uses every core of the machine. An agent stuck in a decision it does not return from, even when interrupted, keeps
+ * a thread busy: it loses every match it has left instead of being played again.
+ *
+ * <p>
+ * To play 10 seeds of every pairing between SimpleAI, RandomAI and ExampleAI and print the results, simply call:
+ * </p>
+ * <pre>
+ * Tournament tournament = new Tournament(Arrays.asList(SimpleAI.class, RandomAI.class, ExampleAI.class), 10, 0);
+ * tournament.run().print(System.out);
+ * </pre>
+ *
+ * @author ERAU AI Club
+ */
+public final class Tournament
+{
+	/** The rating every agent starts the tournament with. */
+	public static final double ELO_START = 1500;
+	
+	/** The maximum rating change of a single match. */
+	public static final double ELO_K_FACTOR = 16;
+	
+	/**
+	 * The <code>Standings</code> class represents the results of a finished tournament: the win/loss/draw matrix between every pair of agents
+	 * and the Elo rating of each agent.
+	 *
+	 * @author ERAU AI Club
+	 */
+	public static final class Standings
+	{
+		private final String[] names;
+		private final int[][] wins;
+		private final int[][] draws;
+		private final double[] elo;
+		
+		Standings(String[] names, int[][] wins, int[][] draws, double[] elo)
+		{
+			this.names = names;
+			this.wins = wins;
+			this.draws = draws;
+			this.elo = elo;
+		}
+		
+		/**
+		 * Returns the number of agents in the tournament.
+		 *
+		 * @return the number of agents
+		 */
+		public final int getAgentCount()
+		{
+			return names.length;
+		}
+		
+		/**
+		 * Returns the simple class name of the agent at the specified index, in the order the agents were given to the tournament.
+		 *
+		 * @param agent - the index of the agent
+		 *
+		 * @return the name of the agent
+		 */
+		public final String getAgentName(int agent)
+		{
+			return names[agent];
+		}
+		
+		/**
+		 * Returns the number of matches <code>agent</code> won against <code>opponent</code>.
+		 *
+		 * @param agent - the index of the agent
+		 * @param opponent - the index of the opponent
+		 *
+		 * @return the number of wins
+		 */
+		public final int getWins(int agent, int opponent)
+		{
+			return wins[agent][opponent];
+		}
+		
+		/**
+		 * Returns the number of matches <code>agent</code> lost against <code>opponent</code>.
+		 *
+		 * @param agent - the index of the agent
+		 * @param opponent - the index of the opponent
+		 *
+		 * @return the number of losses
+		 */
+		public final int getLosses(int agent, int opponent)
+		{
+			return wins[opponent][agent];
+		}
+		
+		/**
+		 * Returns the number of matches between <code>agent</code> and <code>opponent</code> that ended in a draw.
+		 *
+		 * @param agent - the index of the agent
+		 * @param opponent - the index of the opponent
+		 *
+		 * @return the number of draws
+		 */
+		public final int getDraws(int agent, int opponent)
+		{
+			return draws[agent][opponent];
+		}
+		
+		/**
+		 * Returns the Elo rating of the agent at the end of the tournament.
+		 *
+		 * @param agent - the index of the agent
+		 *
+		 * @return the Elo rating
+		 */
+		public final double getElo(int agent)
+		{
+			return elo[agent];
+		}
+		
+		/**
+		 * Prints the agents ranked by Elo rating, followed by the win/loss/draw matrix. Each cell of the matrix is read as row versus column.
+		 *
+		 * @param out - the stream to print to
+		 */
+		public final void print(PrintStream out)
+		{
+			Integer[] ranking = new Integer[names.length];
+			for(int i = 0; i < ranking.length; i++)
+				ranking[i] = i;
+			Arrays.sort(ranking, (agent1, agent2) -> Double.compare(elo[agent2], elo[agent1]));
+			
+			out.println(String.format("%-16s %6s %6s %6s %6s", "Agent", "Elo", "W", "L", "D"));
+			for(int agent : ranking)
+			{
+				int totalWins = 0, totalLosses = 0, totalDraws = 0;
+				for(int opponent = 0; opponent < names.length; opponent++)
+				{
+					totalWins += getWins(agent, opponent);
+					totalLosses += getLosses(agent, opponent);
+					totalDraws += getDraws(agent, opponent);
+				}
+				out.println(String.format("%-16s %6.0f %6d %6d %6d", names[agent], elo[agent], totalWins, totalLosses, totalDraws));
+			}
+			
+			out.println();
+			StringBuilder header = new StringBuilder(String.format("%-16s", "W-L-D"));
+			for(int opponent : ranking)
+				header.append(String.format(" %12.12s", names[opponent]));
+			out.println(header);
+			for(int agent : ranking)
+			{
+				StringBuilder row = new StringBuilder(String.format("%-16s", names[agent]));
+				for(int opponent : ranking)
+				{
+					String cell = (agent == opponent) ? "-" : getWins(agent, opponent) + "-" + getLosses(agent, opponent) + "-" + getDraws(agent, opponent);
+					row.append(String.format(" %12s", cell));
+				}
+				out.println(row);
+			}
+		}
+	}
+	
+	private final int mapWidth;
+	private final int mapHeight;
+	private final List<Class<? extends PlayerAI>> agents;
+	private final int seedsPerPairing;
+	private final long baseSeed;
+	private Path replayDirectory;
+	private Path replayArchive;
+	private MapLibrary mapLibrary;
+	private MetricsRegistry metricsRegistry;
+	private long turnTimeoutMillis = Game.DEFAULT_TURN_TIMEOUT_MILLIS;
+	private boolean agentIsolation = true;
+	
+	/**
+	 * Creates a tournament on the default map size (20x20).
+	 *
+	 * @param agents - the classes of the agents taking part, at least 2
+	 * @param seedsPerPairing - the number of seeds each pairing plays, every seed is played from both sides
+	 * @param baseSeed - the seed of the first map, the i-th map uses <code>baseSeed + i</code>
+	 */
+	public Tournament(List<Class<? extends PlayerAI>> agents, int seedsPerPairing, long baseSeed)
+	{
+		this(20, 20, agents, seedsPerPairing, baseSeed);
+	}
+	
+	/**
+	 * Creates a tournament on the specified map size.
+	 *
+	 * @param mapWidth - the width of the map (8 is minimum)
+	 * @param mapHeight - the height of the map (8 is minimum)
+	 * @param agents - the classes of the agents taking part, at least 2
+	 * @param seedsPerPairing - the number of seeds each pairing plays, every seed is played from both sides
+	 * @param baseSeed - the seed of the first map, the i-th map uses <code>baseSeed + i</code>
+	 *
+	 * @throws IllegalArgumentException when there are less than 2 agents or no seeds
+	 */
+	public Tournament(int mapWidth, int mapHeight, List<Class<? extends PlayerAI>> agents, int seedsPerPairing, long baseSeed)
+	{
+		if(agents == null || agents.size() < 2)
+			throw new IllegalArgumentException("A tournament needs at least 2 agents.");
+		
+		if(seedsPerPairing <= 0)
+			throw new IllegalArgumentException("Seeds per pairing not in range [1..inf]: " + seedsPerPairing);
+		
+		this.mapWidth = mapWidth;
+		this.mapHeight = mapHeight;
+		this.agents = new ArrayList<>(agents);
+		this.seedsPerPairing = seedsPerPairing;
+		this.baseSeed = baseSeed;
+	}
+	
+	/**
+	 * Records every match of the following runs into the specified directory, as one replay file per match. By default, nothing is recorded.
+	 *
+	 * @param replayDirectory - the directory to write the replays into, created if missing, or null to stop recording
+	 *
+	 * @throws IOException when the directory cannot be created
+	 */
+	public final void setReplayDirectory(Path replayDirectory) throws IOException
+	{
+		if(replayDirectory != null)
+			Files.createDirectories(replayDirectory);
+		
+		this.replayDirectory = replayDirectory;
+	}
+	
+	/**
+	 * Records every match of the following runs into the specified {@link ReplayArchive}, which is overwritten by each run.
+	 * The matches are archived in the order they finish. By default, nothing is recorded.
+	 *
+	 * @param replayArchive - the archive file to write, or null to stop recording
+	 */
+	public final void setReplayArchive(Path replayArchive)
+	{
+		this.replayArchive = replayArchive;
+	}
+	
+	/**
+	 * Plays the following runs on the maps of the specified {@link MapLibrary} instead of generating them: the i-th seed of every pairing
+	 * is the seed of the i-th map of the library, wrapping around when there are more seeds than maps, and the base seed is ignored.
+	 * By default, maps are generated from the seeds.
+	 *
+	 * @param mapLibrary - the library file to read, or null to generate the maps again
+	 *
+	 * @throws IOException when the library cannot be read
+	 * @throws IllegalArgumentException when the maps of the library are not of the size of the tournament, or there are none
+	 */
+	public final void setMapLibrary(Path mapLibrary) throws IOException
+	{
+		MapLibrary library = null;
+		if(mapLibrary != null)
+		{
+			library = MapLibrary.open(mapLibrary);
+			if(library.getWidth() != mapWidth || library.getHeight() != mapHeight)
+				throw new IllegalArgumentException("Library of " + library.getWidth() + "x" + library.getHeight() + " maps for a tournament on " + mapWidth + "x" + mapHeight + " maps");
+			if(library.getMapCount() == 0)
+				throw new IllegalArgumentException("Library without maps: " + mapLibrary);
+		}
+		
+		this.mapLibrary = library;
+	}
+	
+	/**
+	 * Sets how long an agent may take to decide its action before it forfeits the turn, see {@link HeadlessMatch#setTurnTimeout(long)}.
+	 * By default the timeout is {@link Game#DEFAULT_TURN_TIMEOUT_MILLIS}, so an agent that never decides cannot stall a worker, and the
+	 * standings only depend on the seeds and agents as long as no turn is forfeited.
+	 *
+	 * @param timeoutMillis - the time budget of a turn in milliseconds, or 0 to let agents take as long as they want
+	 */
+	public final void setTurnTimeout(long timeoutMillis)
+	{
+		this.turnTimeoutMillis = timeoutMillis;
+	}
+	
+	/**
+	 * Sets whether the agents of each match are created from their own copy of their classes, see {@link HeadlessMatch#setAgentIsolation(boolean)}.
+	 * Since the matches of a tournament run in parallel, agents are isolated by default; turning it off is faster, but only safe for
+	 * agents that keep no state in static fields.
+	 *
+	 * @param agentIsolation - true to isolate the agents of every match
+	 */
+	public final void setAgentIsolation(boolean agentIsolation)
+	{
+		this.agentIsolation = agentIsolation;
+	}
+	
+	/**
+	 * Measures the turns of every agent in the following runs, and adds the metrics to the specified registry as the matches finish.
+	 * By default, nothing is measured.
+	 *
+	 * @param metricsRegistry - the registry receiving the metrics, or null to stop measuring
+	 */
+	public final void setMetricsRegistry(MetricsRegistry metricsRegistry)
+	{
+		this.metricsRegistry = metricsRegistry;
+	}
+	
+	/**
+	 * Plays every match of the tournament using one worker per available processor.
+	 *
+	 * @return the standings of the tournament
+	 */
+	public final Standings run()
+	{
+		return run(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Plays every match of the tournament using the specified number of workers.
+	 * The standings do not depend on the number of workers, since the ratings are computed in schedule order once all matches are over.
+	 *
+	 * @param parallelism - the number of worker threads
+	 *
+	 * @return the standings of the tournament
+	 */
+	public final Standings run(int parallelism)
+	{
+		// Schedule every pairing x seed x side
+		int agentCount = agents.size();
+		int matchCount = agentCount * (agentCount - 1) * seedsPerPairing;
+		long[] pairingSeeds = new long[seedsPerPairing];
+		for(int i = 0; i < seedsPerPairing; i++)
+			pairingSeeds[i] = (mapLibrary != null) ? mapLibrary.getSeed(i % mapLibrary.getMapCount()) : baseSeed + i;
+		
+		int[] p1Indices = new int[matchCount];
+		int[] p2Indices = new int[matchCount];
+		long[] seeds = new long[matchCount];
+		int match = 0;
+		for(int agent1 = 0; agent1 < agentCount; agent1++)
+		{
+			for(int agent2 = agent1 + 1; agent2 < agentCount; agent2++)
+			{
+				for(int i = 0; i < seedsPerPairing; i++)
+				{
+					p1Indices[match] = agent1;
+					p2Indices[match] = agent2;
+					seeds[match] = pairingSeeds[i];
+					match++;
+					
+					p1Indices[match] = agent2;
+					p2Indices[match] = agent1;
+					seeds[match] = pairingSeeds[i];
+					match++;
+				}
+			}
+		}
+		
+		HeadlessMatch.Outcome[] outcomes = new HeadlessMatch.Outcome[matchCount];
+		AtomicIntegerArray abandonedAgents = new AtomicIntegerArray(agentCount); // 1 once an agent was abandoned by its watchdog
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		MapGenerator mapGenerator = new MapGenerator(mapWidth, mapHeight);
+		try(ReplayArchiveWriter archiveWriter = (replayArchive != null) ? new ReplayArchiveWriter(replayArchive) : null)
+		{
+			// Every pairing plays the same seeds, so each map is read or generated once, by the workers, before the first match
+			if(mapLibrary != null)
+				mapGenerator.addLayouts(mapLibrary);
+			else
+				pool.submit(() -> mapGenerator.pregenerate(baseSeed, seedsPerPairing)).join();
+			pool.invoke(new MatchTask(p1Indices, p2Indices, seeds, outcomes, abandonedAgents, mapGenerator, archiveWriter, 0, matchCount));
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		
+		return createStandings(p1Indices, p2Indices, outcomes);
+	}
+	
+	private final Standings createStandings(int[] p1Indices, int[] p2Indices, HeadlessMatch.Outcome[] outcomes)
+	{
+		int agentCount = agents.size();
+		String[] names = new String[agentCount];
+		for(int i = 0; i < agentCount; i++)
+			names[i] = agents.get(i).getSimpleName();
+		
+		int[][] wins = new int[agentCount][agentCount];
+		int[][] draws = new int[agentCount][agentCount];
+		double[] elo = new double[agentCount];
+		Arrays.fill(elo, ELO_START);
+		
+		for(int match = 0; match < outcomes.length; match++)
+		{
+			int agent1 = p1Indices[match];
+			int agent2 = p2Indices[match];
+			
+			double score;
+			switch(outcomes[match])
+			{
+				case Player1Win:
+					wins[agent1][agent2]++;
+					score = 1;
+					break;
+				
+				case Player2Win:
+					wins[agent2][agent1]++;
+					score = 0;
+					break;
+				
+				default:
+					draws[agent1][agent2]++;
+					draws[agent2][agent1]++;
+					score = 0.5;
+					break;
+			}
+			
+			double expected = 1 / (1 + Math.pow(10, (elo[agent2] - elo[agent1]) / 400));
+			double change = ELO_K_FACTOR * (score - expected);
+			elo[agent1] += change;
+			elo[agent2] -= change;
+		}
+		
+		return new Standings(names, wins, draws, elo);
+	}
+	
+	// Splits the schedule in halves until a single match is left, letting idle workers steal the other halves
+	private final class MatchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 2263490721581146503L;
+		
+		private final int[] p1Indices;
+		private final int[] p2Indices;
+		private final long[] seeds;
+		private final HeadlessMatch.Outcome[] outcomes;
+		private final AtomicIntegerArray abandonedAgents;
+		private final MapGenerator mapGenerator;
+		private final ReplayArchiveWriter archiveWriter;
+		private final int from;
+		private final int to;
+		
+		MatchTask(int[] p1Indices, int[] p2Indices, long[] seeds, HeadlessMatch.Outcome[] outcomes, AtomicIntegerArray abandonedAgents,
+				  MapGenerator mapGenerator, ReplayArchiveWriter archiveWriter, int from, int to)
+		{
+			this.p1Indices = p1Indices;
+			this.p2Indices = p2Indices;
+			this.seeds = seeds;
+			this.outcomes = outcomes;
+			this.abandonedAgents = abandonedAgents;
+			this.mapGenerator = mapGenerator;
+			this.archiveWriter = archiveWriter;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if(to - from == 1)
+			{
+				try
+				{
+					outcomes[from] = playMatch();
+				}
+				catch(IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+			else if(to - from > 1)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new MatchTask(p1Indices, p2Indices, seeds, outcomes, abandonedAgents, mapGenerator, archiveWriter, from, middle),
+						  new MatchTask(p1Indices, p2Indices, seeds, outcomes, abandonedAgents, mapGenerator, archiveWriter, middle, to));
+			}
+		}
+		
+		private final HeadlessMatch.Outcome playMatch() throws IOException
+		{
+			// An abandoned agent may still be running, playing it again could leave one more thread behind
+			boolean p1Forfeits = abandonedAgents.get(p1Indices[from]) != 0;
+			boolean p2Forfeits = abandonedAgents.get(p2Indices[from]) != 0;
+			if(p1Forfeits || p2Forfeits)
+				return (p1Forfeits == p2Forfeits) ? HeadlessMatch.Outcome.Draw : p1Forfeits ? HeadlessMatch.Outcome.Player2Win : HeadlessMatch.Outcome.Player1Win;
+			
+			Class<? extends PlayerAI> p1Class = agents.get(p1Indices[from]);
+			Class<? extends PlayerAI> p2Class = agents.get(p2Indices[from]);
+			HeadlessMatch headlessMatch = new HeadlessMatch(mapWidth, mapHeight, p1Class, p2Class);
+			headlessMatch.setMetricsRegistry(metricsRegistry);
+			headlessMatch.setTurnTimeout(turnTimeoutMillis);
+			headlessMatch.setAgentIsolation(agentIsolation);
+			headlessMatch.setMapGenerator(mapGenerator);
+			try
+			{
+				return playMatch(headlessMatch, p1Class, p2Class);
+			}
+			finally
+			{
+				if(headlessMatch.isPlayer1Abandoned())
+					abandonedAgents.set(p1Indices[from], 1);
+				if(headlessMatch.isPlayer2Abandoned())
+					abandonedAgents.set(p2Indices[from], 1);
+			}
+		}
+		
+		private final HeadlessMatch.Outcome playMatch(HeadlessMatch headlessMatch, Class<? extends PlayerAI> p1Class, Class<? extends PlayerAI> p2Class) throws IOException
+		{
+			if(replayDirectory == null && archiveWriter == null)
+				return headlessMatch.play(seeds[from]).getOutcome();
+			
+			// Record into memory, a replay only takes a few kilobytes
+			ByteArrayOutputStream replayBytes = new ByteArrayOutputStream(8192);
+			HeadlessMatch.Outcome outcome;
+			try(ReplayWriter replayWriter = new ReplayWriter(Channels.newChannel(replayBytes)))
+			{
+				outcome = headlessMatch.play(seeds[from], replayWriter).getOutcome();
+			}
+			
+			byte[] replay = replayBytes.toByteArray();
+			if(replayDirectory != null)
+				Files.write(replayDirectory.resolve(ReplayFormat.getFileName(p1Class.getName(), p2Class.getName(), seeds[from])), replay);
+			
+			if(archiveWriter != null)
+				archiveWriter.append(ByteBuffer.wrap(replay));
+			
+			return outcome;
+		}
+	}
+	
+	/**
+	 * Plays a tournament from the command line, in the format of:
+	 *
+	 * <pre>
+	 * java arena.core.Tournament [seedsPerPairing] [baseSeed] [agentClass...]
+	 * </pre>
+	 *
+	 * <p>
+	 * When no agent classes are given, the agents of the <code>arena.agents</code> package play against each other.
+	 * Setting the <code>arena.replays</code> system property to a directory records every match into it, and setting the
+	 * <code>arena.replayArchive</code> system property to a file records every match into a single {@link ReplayArchive}. Setting the
+	 * <code>arena.metrics</code> system property to <code>true</code> prints the {@link AgentMetrics} of every agent after the standings,
+	 * setting the <code>arena.isolateAgents</code> system property to <code>false</code> turns agent isolation off, setting the
+	 * <code>arena.mapLibrary</code> system property to a {@link MapLibrary} file plays its maps instead of generating them, and setting
+	 * the <code>arena.turnTimeout</code> system property to a number of milliseconds sets the turn timeout, 0 turning it off.
+	 * </p>
+	 *
+	 * @param args - the number of seeds per pairing, the first seed and the fully qualified class names of the agents
+	 *
+	 * @throws ClassNotFoundException when an agent class cannot be found
+	 * @throws IOException when the replay directory cannot be created or the map library cannot be read
+	 */
+	public static void main(String[] args) throws ClassNotFoundException, IOException
+	{
+		int seedsPerPairing = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		long baseSeed = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+		
+		List<Class<? extends PlayerAI>> agents = new ArrayList<>();
+		for(int i = 2; i < args.length; i++)
+		{
+			agents.add(Class.forName(args[i]).asSubclass(PlayerAI.class));
+		}
+		
+		if(agents.isEmpty())
+		{
+			agents.addAll(Arrays.asList(GageAI.class, ConnorAI.class, ConnorNewAI.class, JakobAI.class, DannyAI.class, LukeCAI.class,
+										KamrynAI.class, FrankymonkeyAI.class, SimpleAI.class, ExampleAI.class, RandomAI.class));
+		}
+		
+		Tournament tournament = new Tournament(agents, seedsPerPairing, baseSeed);
+		String replayDirectory = System.getProperty("arena.replays");
+		if(replayDirectory != null)
+			tournament.setReplayDirectory(Paths.get(replayDirectory));
+		String mapLibrary = System.getProperty("arena.mapLibrary");
+		if(mapLibrary != null)
+			tournament.setMapLibrary(Paths.get(mapLibrary));
+		String replayArchive = System.getProperty("arena.replayArchive");
+		if(replayArchive != null)
+			tournament.setReplayArchive(Paths.get(replayArchive));
+		MetricsRegistry metrics = Boolean.getBoolean("arena.metrics") ? new MetricsRegistry() : null;
+		tournament.setMetricsRegistry(metrics);
+		tournament.setAgentIsolation(Boolean.parseBoolean(System.getProperty("arena.isolateAgents", "true")));
+		tournament.setTurnTimeout(Long.getLong("arena.turnTimeout", Game.DEFAULT_TURN_TIMEOUT_MILLIS));
+		
+		long startTime = System.nanoTime();
+		Standings standings = tournament.run();
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		
+		standings.print(System.out);
+		System.out.println();
+		System.out.println("Played " + (agents.size() * (agents.size() - 1) * seedsPerPairing) + " matches in " + String.format("%.2f", seconds) + " seconds");
+		
+		if(metrics != null)
+		{
+			System.out.println();
+			metrics.print(System.out);
+		}
+	}
+}